@@ -0,0 +1,113 @@
+package controller;
+
+import java.util.ArrayList;
+
+/**
+ * The NewsBuffer holds the most recent news items in a ring buffer of fixed
+ * size, so that adding an item takes constant time and memory stays bounded
+ * however long the simulation runs. Older items are overwritten.
+ *
+ * An item is either a free text message, or a summary of how many animals
+ * of one type were affected by a NewsEvent during an update. Items are only
+ * turned into text when they are read.
+ *
+ * Every item has a sequence number, so that a reader can ask for all items
+ * that have been added since its last visit.
+ */
+public class NewsBuffer
+{
+	private final int[] turns;
+	private final String[] messages; //null for event summaries
+	private final NewsEvent[] events;
+	private final OccupantType[] occupants;
+	private final int[] counts;
+	private long written; //The sequence number of the next item
+
+	/**
+	 * The constructor.
+	 * @param capacity The number of items to keep
+	 */
+	public NewsBuffer(int capacity)
+	{
+		turns = new int[capacity];
+		messages = new String[capacity];
+		events = new NewsEvent[capacity];
+		occupants = new OccupantType[capacity];
+		counts = new int[capacity];
+		written = 0;
+	}
+
+	/**
+	 * Add a free text message.
+	 */
+	public synchronized void add(int turn, String message)
+	{
+		int i = (int) (written % turns.length);
+		turns[i] = turn;
+		messages[i] = message;
+		events[i] = null;
+		occupants[i] = null;
+		counts[i] = 0;
+		written++;
+	}
+
+	/**
+	 * Add a summary of the events of one kind during an update.
+	 */
+	public synchronized void add(int turn, NewsEvent event, OccupantType type, int count)
+	{
+		int i = (int) (written % turns.length);
+		turns[i] = turn;
+		messages[i] = null;
+		events[i] = event;
+		occupants[i] = type;
+		counts[i] = count;
+		written++;
+	}
+
+	/**
+	 * Read all items added since the given sequence number, as text.
+	 * @param from The sequence number of the first item wanted
+	 * @param out The list to add the items to
+	 * @return The sequence number to continue from next time
+	 */
+	public synchronized long read(long from, ArrayList<String> out)
+	{
+		long oldest = Math.max(0, written - turns.length);
+		if (from < oldest) {
+			out.add("("+(oldest-from)+" older news items dropped)");
+			from = oldest;
+		}
+		for (long n = from; n < written; n++) {
+			out.add(format((int) (n % turns.length)));
+		}
+		return written;
+	}
+
+	/**
+	 * Return the sequence number of the next item to be added.
+	 */
+	public synchronized long getWritten()
+	{
+		return written;
+	}
+
+	/**
+	 * Turn an item into text.
+	 */
+	private String format(int i)
+	{
+		if (messages[i] != null) return turns[i]+": "+messages[i];
+		else return turns[i]+": "+describe(events[i], occupants[i], counts[i]);
+	}
+
+	/**
+	 * Describe a number of events, e.g. "312 herbivores born".
+	 */
+	public static String describe(NewsEvent event, OccupantType type, int count)
+	{
+		String animal = type.toString().toLowerCase();
+		if (count != 1) animal += "s";
+		return count+" "+animal+" "+event.getDescription();
+	}
+}
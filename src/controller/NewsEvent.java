@@ -0,0 +1,27 @@
+package controller;
+
+/**
+ * The kinds of events that are counted for the news ticker. Instead of
+ * one news item per event, World sums them up at the end of each update.
+ */
+public enum NewsEvent
+{
+	BIRTH,
+	OLD_AGE,
+	STARVATION,
+	KILLED;
+
+	/**
+	 * Return a description of the event, as used in the news.
+	 */
+	public String getDescription()
+	{
+		switch (this) {
+			case BIRTH: return "born";
+			case OLD_AGE: return "died of old age";
+			case STARVATION: return "starved";
+			case KILLED: return "killed";
+			default: return "N/A"; //Cannot be called
+		}
+	}
+}
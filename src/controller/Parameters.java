@@ -0,0 +1,49 @@
+package controller;
+
+import java.util.Map;
+
+/**
+ * An immutable snapshot of the world parameters that stay fixed during a run.
+ * It is taken by World at the start of each run, so that the simulation can
+ * read these values as plain fields instead of looking them up by name.
+ * Parameters that may change at runtime (humidity, timelapse, stopAt and
+ * autorun) are not included here and must still be read via World.getParam().
+ */
+public final class Parameters
+{
+	//The ways in which the animals can be updated (see Simulator.update())
+	public static final int SERIAL_UPDATE = 0;
+	public static final int STRIP_UPDATE = 1;
+	public static final int INTENT_UPDATE = 2;
+	
+	public final int xsize;
+	public final int ysize;
+	public final int waterTiles;
+	public final int startGrassDensity;
+	public final int startNoCarnivores;
+	public final int startNoHerbivores;
+	public final int startEnergyCarnivores;
+	public final int startEnergyHerbivores;
+	public final boolean lazyGrass;
+	public final int updateMode;
+	public final int updateThreads;
+	
+	/**
+	 * The constructor. Only World creates these snapshots.
+	 * @param params The current parameter settings
+	 */
+	Parameters(Map<String, Integer> params)
+	{
+		xsize = params.get("xsize");
+		ysize = params.get("ysize");
+		waterTiles = params.get("waterTiles");
+		startGrassDensity = params.get("startGrassDensity");
+		startNoCarnivores = params.get("startNoCarnivores");
+		startNoHerbivores = params.get("startNoHerbivores");
+		startEnergyCarnivores = params.get("startEnergyCarnivores");
+		startEnergyHerbivores = params.get("startEnergyHerbivores");
+		lazyGrass = params.get("lazyGrass") != 0;
+		updateMode = params.get("updateMode");
+		updateThreads = params.get("updateThreads");
+	}
+}
@@ -0,0 +1,333 @@
+package controller;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * A Snapshot holds the state of the simulation at the end of an update, as
+ * it is passed from model to view. All data is stored in primitive arrays
+ * that are reused from one update to the next, so that filling a snapshot
+ * does not create any new objects. Animal data is stored in columns (one
+ * int array per variable), with one slot per animal.
+ *
+ * Animals can be looked up by position or by ID number in constant time. The
+ * lookup indices are built by finish() once all animals have been added.
+ *
+ * World keeps two snapshots: one that is published to the view, and one
+ * that is being filled by the model. Anybody reading from or writing to a
+ * snapshot must synchronize on it.
+ */
+public final class Snapshot
+{
+	//The columns of the animal data
+	public static final int ID = 0;
+	public static final int TYPE = 1;
+	public static final int X = 2;
+	public static final int Y = 3;
+	public static final int AGE = 4;
+	public static final int ENERGY = 5;
+	public static final int GENERATION = 6;
+	public static final int PARENT = 7;
+	public static final int OFFSPRING = 8;
+	public static final int MUTATION_RATE = 9;
+	public static final int SPEED = 10;
+	public static final int STAMINA = 11;
+	public static final int SIGHT = 12;
+	public static final int METABOLISM = 13;
+	public static final int AGE_LIMIT = 14;
+	public static final int STRENGTH = 15;
+	public static final int REPRODUCTIVE_ENERGY = 16;
+	public static final int MATURITY_AGE = 17;
+	public static final int GESTATION = 18;
+	public static final int REPRODUCTION_RATE = 19;
+
+	//The names of the columns, as used in the animal info hash maps
+	public static final String[] COLUMN_NAMES = {"ID", "Type", "X", "Y", "Age", "Energy",
+		"Generation", "Parent", "Offspring", "Mutation rate", "Speed", "Stamina", "Sight",
+		"Metabolism", "Age limit", "Strength", "Reproductive energy", "Maturity age",
+		"Gestation", "Reproduction rate"};
+
+	private int turn;
+	private int previousTurn; //The update of the snapshot published before this one (or -1)
+	private int animalCount;
+	private int[][] animals; //animals[column][slot]
+	private int[] slotByTile; //The slot of the animal on each tile (only valid if X and Y match)
+	private int[] idKeys, idSlots; //An open addressing hash table mapping ID numbers to slots
+
+	private int xsize, ysize;
+	private byte[] grass, humidity, occupant; //One entry per tile, stored row by row
+	private int[] changedTiles; //The tiles that look different than in the previous snapshot
+	private int changedCount; //The number of changed tiles, or -1 if there were too many to list
+
+	/**
+	 * The constructor.
+	 */
+	public Snapshot()
+	{
+		turn = 0;
+		previousTurn = -1;
+		animalCount = 0;
+		animals = new int[COLUMN_NAMES.length][256];
+		slotByTile = new int[0];
+		idKeys = new int[512];
+		idSlots = new int[512];
+		xsize = 0;
+		ysize = 0;
+		grass = humidity = occupant = new byte[0];
+		changedTiles = new int[0];
+		changedCount = -1;
+	}
+
+	/**
+	 * Empty this snapshot, ready to be filled with a new update.
+	 * @param newTurn The update number
+	 * @param newPreviousTurn The update of the previously published snapshot (or -1)
+	 * @param newXSize, newYSize The dimensions of the map
+	 */
+	public void clear(int newTurn, int newPreviousTurn, int newXSize, int newYSize)
+	{
+		turn = newTurn;
+		previousTurn = newPreviousTurn;
+		animalCount = 0;
+		if (newXSize*newYSize != grass.length) {
+			grass = new byte[newXSize*newYSize];
+			humidity = new byte[newXSize*newYSize];
+			occupant = new byte[newXSize*newYSize];
+			slotByTile = new int[newXSize*newYSize];
+			//If more tiles than this have changed, it is cheaper to redraw all of them
+			changedTiles = new int[Math.min(newXSize*newYSize, Math.max(1024, newXSize*newYSize/8))];
+		}
+		changedCount = -1;
+		xsize = newXSize;
+		ysize = newYSize;
+	}
+
+	/**
+	 * Reserve a slot for a new animal.
+	 * @return the slot number
+	 */
+	public int addAnimal()
+	{
+		if (animalCount == animals[0].length) {
+			int capacity = animalCount*2;
+			for (int c = 0; c < animals.length; c++) {
+				animals[c] = Arrays.copyOf(animals[c], capacity);
+			}
+		}
+		return animalCount++;
+	}
+
+	/**
+	 * Set a variable of the animal in this slot.
+	 */
+	public void set(int slot, int column, int value)
+	{
+		animals[column][slot] = value;
+	}
+
+	/**
+	 * Return a variable of the animal in this slot.
+	 */
+	public int get(int slot, int column)
+	{
+		return animals[column][slot];
+	}
+
+	/**
+	 * Build the lookup indices. This must be called after all animals have
+	 * been added, before the snapshot is published.
+	 */
+	public void finish()
+	{
+		//Keep the hash table at most half full
+		if (idKeys.length < animalCount*2) {
+			int capacity = idKeys.length;
+			while (capacity < animalCount*2) capacity *= 2;
+			idKeys = new int[capacity];
+			idSlots = new int[capacity];
+		}
+		else Arrays.fill(idKeys, 0); //ID numbers start at 1, so 0 marks an empty entry
+		int[] ids = animals[ID], xs = animals[X], ys = animals[Y];
+		for (int slot = 0; slot < animalCount; slot++) {
+			slotByTile[ys[slot]*xsize + xs[slot]] = slot;
+			int h = hash(ids[slot]);
+			while (idKeys[h] != 0) h = (h+1) & (idKeys.length-1);
+			idKeys[h] = ids[slot];
+			idSlots[h] = slot;
+		}
+	}
+
+	/**
+	 * Return the slot of the animal at (x, y), or -1 if there is none.
+	 */
+	public int slotAt(int x, int y)
+	{
+		if (x < 0 || y < 0 || x >= xsize || y >= ysize) return -1;
+		//Entries in the tile index are not cleared between updates,
+		//so we have to check that the animal in the slot is really here.
+		int slot = slotByTile[y*xsize + x];
+		if (slot < animalCount && animals[X][slot] == x && animals[Y][slot] == y) return slot;
+		else return -1;
+	}
+
+	/**
+	 * Return the slot of the animal with this ID number, or -1 if it is
+	 * not alive in this snapshot.
+	 */
+	public int slotOf(int id)
+	{
+		if (id <= 0) return -1;
+		int h = hash(id);
+		while (idKeys[h] != 0) {
+			if (idKeys[h] == id) return idSlots[h];
+			h = (h+1) & (idKeys.length-1);
+		}
+		return -1;
+	}
+
+	/**
+	 * Spread the ID numbers (which are consecutive) over the hash table.
+	 */
+	private int hash(int id)
+	{
+		return (id * 0x9E3779B9) >>> (32 - Integer.numberOfTrailingZeros(idKeys.length));
+	}
+
+	/**
+	 * Return the information about the animal in this slot as a hash map.
+	 */
+	public HashMap<String, Integer> getAnimalInfo(int slot)
+	{
+		HashMap<String, Integer> info = new HashMap<String, Integer>();
+		for (int c = 0; c < COLUMN_NAMES.length; c++) {
+			info.put(COLUMN_NAMES[c], animals[c][slot]);
+		}
+		return info;
+	}
+
+	/*
+	 * Tile accessors ((x, y) must be on the map)
+	 */
+
+	/**
+	 * Return the occupant of the tile at (x, y), as given by OccupantType.toInt().
+	 */
+	public int getOccupant(int x, int y)
+	{
+		return occupant[y*xsize + x];
+	}
+
+	public int getGrassDensity(int x, int y)
+	{
+		return grass[y*xsize + x];
+	}
+
+	public int getLocalHumidity(int x, int y)
+	{
+		return humidity[y*xsize + x];
+	}
+
+	/**
+	 * Return the information about the tile at (x, y) as a hash map.
+	 */
+	public HashMap<String, Integer> getFieldInfo(int x, int y)
+	{
+		int i = y*xsize + x;
+		HashMap<String, Integer> info = new HashMap<String, Integer>();
+		info.put("X", x);
+		info.put("Y", y);
+		info.put("Grass density", (int) grass[i]);
+		info.put("Local humidity", (int) humidity[i]);
+		info.put("Occupant", (int) occupant[i]);
+		return info;
+	}
+
+	/*
+	 * Getters
+	 */
+
+	public int getTurn()
+	{
+		return turn;
+	}
+
+	/**
+	 * Return the update of the snapshot published before this one, which
+	 * the list of changed tiles refers to (-1 if there was none).
+	 */
+	public int getPreviousTurn()
+	{
+		return previousTurn;
+	}
+
+	public int getAnimalCount()
+	{
+		return animalCount;
+	}
+
+	public int getXSize()
+	{
+		return xsize;
+	}
+
+	public int getYSize()
+	{
+		return ysize;
+	}
+
+	/**
+	 * The buffer for the indices of the tiles that have changed their
+	 * appearance since the previously published snapshot. This is filled in directly
+	 * by the model, which then calls setChangedCount().
+	 */
+	public int[] getChangedTiles()
+	{
+		return changedTiles;
+	}
+
+	/**
+	 * Set the number of changed tiles. If there were more than fit into the
+	 * buffer, the list is marked as incomplete.
+	 */
+	public void setChangedCount(int count)
+	{
+		if (count > changedTiles.length) changedCount = -1;
+		else changedCount = count;
+	}
+
+	/**
+	 * Return the number of tiles that have changed their appearance since the
+	 * previously published snapshot, or -1 if this is not known (in which case all
+	 * tiles should be treated as changed).
+	 */
+	public int getChangedCount()
+	{
+		return changedCount;
+	}
+
+	/**
+	 * The grass density of each tile, row by row. This array is filled in
+	 * directly by the model; it must not be changed by anybody else.
+	 */
+	public byte[] getGrassLayer()
+	{
+		return grass;
+	}
+
+	/**
+	 * The local humidity of each tile (see getGrassLayer()).
+	 */
+	public byte[] getHumidityLayer()
+	{
+		return humidity;
+	}
+
+	/**
+	 * The occupant of each tile, as given by OccupantType.toInt()
+	 * (see getGrassLayer()).
+	 */
+	public byte[] getOccupantLayer()
+	{
+		return occupant;
+	}
+}
@@ -3,19 +3,24 @@ package controller;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 import main.EcologiaIO;
 import model.Carnivore;
 import model.Genome;
 import model.Herbivore;
-import model.Simulator;
+import model.Statistics;
 
 /**
  * The World class acts as a communicator between the model and the view packages. It receives
  * the current status of the simulation from model and passes it on to view. Conversely, user
  * input from view is forwarded to model. It also stores all simulation settings.
+ *
+ * The GUI and the main class use the Singleton instance, but further
+ * worlds can be created as copies of it to run several simulations at once
+ * (see Ensemble).
  * 
  * @author Daniel Vedder
  * @version 29.8.2014
@@ -23,30 +28,44 @@ import model.Simulator;
 public class World 
 {
 	private static World world; //The Singleton instance of this class
+	private static final int NEWS_CAPACITY = 1000; //How many news items are kept?
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L; //Spaces out the derived seeds
 	
-	//Parameter variables are stored in this hashmap
-	private HashMap<String, Integer> parameters;
+	//Parameter variables are stored in this hashmap (the GUI changes some of
+	//them while the simulation thread is reading them, so it must be thread-safe)
+	private ConcurrentHashMap<String, Integer> parameters;
+	private Parameters runParameters; //The fixed parameters of the current run
+	private Genome herbivoreGenome, carnivoreGenome; //The genomes of the initial populations
+	private long seed; //All random numbers of a run are derived from this
+	private boolean fixedSeed = false; //Was the seed set explicitly? (Otherwise, each run gets a new one)
 
 	//Runtime variables
-	private boolean running; //Is the simulation running?
+	private volatile boolean running; //Is the simulation running?
+	private volatile boolean stoppedByError; //Has a break error stopped this run?
 	private int turn; //The update number
 	private int nextID; //The next ID number that will be handed out to a newborn animal
 	private int herbivoreCounter, carnivoreCounter; //Keep count of the herbivores and carnivores
 	private int highestGeneration; //What generation have we reached by now?
 	private int averageGrassDensity; //A measure of how much food is available for the herbivores
-	private ArrayList<HashMap<String, Integer>> animals; //A list of properties of each animal
-	private ArrayList<String> news; //A collection of news items that have accumulated
+	private Snapshot publishedSnapshot; //The latest complete snapshot, as read by the view
+	private Snapshot nextSnapshot; //The snapshot that the model fills next
+	private boolean publishing = true; //Fill in snapshots at all? (Not needed without a GUI)
+	private boolean snapshotTaken = true; //Has the latest snapshot been read since it was published?
+	private NewsBuffer news; //The most recent news items
+	private AtomicIntegerArray eventCounts; //How often has each NewsEvent happened this update?
+	private Statistics statistics; //The running statistics of the current simulation
 	
 	/**
 	 * This class implements Singleton, therefore the constructor is private.
 	 */
 	private World()
 	{
-		parameters = new HashMap<String, Integer>();
+		parameters = new ConcurrentHashMap<String, Integer>();
 		//Parameter settings (defaults, can be changed via the config file)
 		parameters.put("xsize", 100);
 		parameters.put("ysize", 100);
 		parameters.put("timelapse", 100);
+		parameters.put("frameRate", 25);
 		parameters.put("stopAt", 200);
 		parameters.put("autorun", -1);
 		parameters.put("waterTiles", 10);
@@ -56,10 +75,30 @@ public class World
 		parameters.put("startNoHerbivores", 200);
 		parameters.put("startEnergyCarnivores", 150);
 		parameters.put("startEnergyHerbivores", 100);
+		parameters.put("lazyGrass", 0);
+		parameters.put("updateMode", Parameters.SERIAL_UPDATE);
+		parameters.put("updateThreads", 0);
+		herbivoreGenome = Herbivore.DEFAULT_GENOME;
+		carnivoreGenome = Carnivore.DEFAULT_GENOME;
 		
 		reset(); //Runtime variables
 	}
 	
+	/**
+	 * Create a new world with the same parameter settings and default
+	 * genomes as the given one, ready for a separate run.
+	 */
+	public World(World template)
+	{
+		parameters = new ConcurrentHashMap<String, Integer>(template.parameters);
+		herbivoreGenome = template.herbivoreGenome;
+		carnivoreGenome = template.carnivoreGenome;
+		publishing = template.publishing;
+		seed = template.seed;
+		fixedSeed = template.fixedSeed;
+		reset();
+	}
+	
 	/**
 	 * The Singleton method.
 	 */
@@ -121,8 +160,8 @@ public class World
 			}
 			//Wrap up
 			confReader.close();
-			Herbivore.defaultGenome = new Genome(herbGen);
-			Carnivore.defaultGenome = new Genome(carnGen);
+			herbivoreGenome = new Genome(herbGen);
+			carnivoreGenome = new Genome(carnGen);
 			EcologiaIO.log("Parsed config file "+filename);
 		}
 		catch (IOException ioe) {
@@ -137,57 +176,199 @@ public class World
 	public void reset()
 	{
 		running = false;
+		stoppedByError = false;
+		if (!fixedSeed) seed = mix(System.nanoTime() ^ System.currentTimeMillis());
 		turn = 0;
 		nextID = 0;
 		herbivoreCounter = 0;
 		carnivoreCounter = 0;
 		highestGeneration = 1;
 		averageGrassDensity = parameters.get("startGrassDensity");
-		animals = null;
-		news = new ArrayList<String>();
+		publishedSnapshot = new Snapshot();
+		nextSnapshot = new Snapshot();
+		snapshotTaken = true;
+		news = new NewsBuffer(NEWS_CAPACITY);
+		eventCounts = new AtomicIntegerArray(NewsEvent.values().length*OccupantType.values().length);
 	}
 	
 	/**
-	 * Display a news item - calling with null as a parameter resets the news list
+	 * Display a news item (null is ignored)
 	 * @param news
 	 */
 	public void giveNews(String message)
 	{
-		if (message == null) {
-			news.clear();
+		if (message != null) {
+			news.add(turn, message);
+			EcologiaIO.log(turn+": "+message);
 		}
-		else {
-			message = turn+": "+message;
-			news.add(message);
-			EcologiaIO.log(message);
+	}
+	
+	/**
+	 * Count an event for the news. This is cheap enough to be called for
+	 * every single birth or death (and safe to call from several threads);
+	 * the counts are turned into news items by summariseEvents().
+	 */
+	public void reportEvent(NewsEvent event, OccupantType type)
+	{
+		eventCounts.incrementAndGet(event.ordinal()*OccupantType.values().length + type.ordinal());
+	}
+	
+	/**
+	 * Add one news item for each kind of event that has happened since the
+	 * last call (e.g. "312 herbivores born"), and reset the counts.
+	 * This is called by the Simulator at the end of each update.
+	 */
+	public void summariseEvents()
+	{
+		OccupantType[] types = OccupantType.values();
+		for (NewsEvent event : NewsEvent.values()) {
+			for (OccupantType type : types) {
+				int count = eventCounts.getAndSet(event.ordinal()*types.length + type.ordinal(), 0);
+				if (count > 0) {
+					news.add(turn, event, type, count);
+					EcologiaIO.log(() -> turn+": "+NewsBuffer.describe(event, type, count));
+				}
+			}
 		}
 	}
 	
 	/**
 	 * Return information about the animal at the given position as a hash map
+	 * (taken from the latest snapshot)
 	 * @param x, y
 	 * @return HashMap, or null if no animal at the specified location
 	 */
 	public HashMap<String, Integer>	getAnimalInfo(int x, int y)
 	{
-		HashMap<String, Integer> info = null;
-		for (int a = 0; a < animals.size(); a++) {
-			if (animals.get(a).get("X") == x && animals.get(a).get("Y") == y) {
-				info = animals.get(a);
-				break;
-			}
+		Snapshot snapshot = getSnapshot();
+		synchronized (snapshot) {
+			int slot = snapshot.slotAt(x, y);
+			if (slot == -1) return null;
+			else return snapshot.getAnimalInfo(slot);
+		}
+	}
+	
+	/**
+	 * Return information about the animal with the given ID number as a hash map
+	 * (taken from the latest snapshot)
+	 * @param id
+	 * @return HashMap, or null if this animal is not alive
+	 */
+	public HashMap<String, Integer> getAnimalInfoByID(int id)
+	{
+		Snapshot snapshot = getSnapshot();
+		synchronized (snapshot) {
+			int slot = snapshot.slotOf(id);
+			if (slot == -1) return null;
+			else return snapshot.getAnimalInfo(slot);
 		}
-		return info;
 	}
 	
 	/**
 	 * Return information about the map field at the given position as a hash map
+	 * (taken from the latest snapshot)
 	 * @param x, y
 	 * @return HashMap, or null if out of bounds
 	 */
 	public HashMap<String, Integer>	getFieldInfo(int x, int y)
 	{
-		return Simulator.getField(x, y).getInfo();
+		Snapshot snapshot = getSnapshot();
+		synchronized (snapshot) {
+			if (x < 0 || y < 0 || x >= snapshot.getXSize() || y >= snapshot.getYSize()) return null;
+			return snapshot.getFieldInfo(x, y);
+		}
+	}
+
+	/*
+	 * Allocation-free accessors for single tiles (taken from the latest snapshot).
+	 * (x, y) must be on the map. To read many tiles, use the snapshot directly.
+	 */
+
+	/**
+	 * Return the occupant of the tile at (x, y), as given by OccupantType.toInt().
+	 */
+	public int getOccupant(int x, int y)
+	{
+		Snapshot snapshot = getSnapshot();
+		synchronized (snapshot) {
+			return snapshot.getOccupant(x, y);
+		}
+	}
+
+	public int getGrassDensity(int x, int y)
+	{
+		Snapshot snapshot = getSnapshot();
+		synchronized (snapshot) {
+			return snapshot.getGrassDensity(x, y);
+		}
+	}
+
+	public int getLocalHumidity(int x, int y)
+	{
+		Snapshot snapshot = getSnapshot();
+		synchronized (snapshot) {
+			return snapshot.getLocalHumidity(x, y);
+		}
+	}
+
+	/**
+	 * Return the latest complete snapshot of the simulation. Readers must
+	 * synchronize on it while they are using it, and should not hold on to it
+	 * for longer than necessary (it will be reused by the model two updates later).
+	 */
+	public synchronized Snapshot getSnapshot()
+	{
+		snapshotTaken = true;
+		return publishedSnapshot;
+	}
+
+	/**
+	 * Return the snapshot that the model should fill in next.
+	 * (Only used by the Simulator.)
+	 */
+	public synchronized Snapshot getNextSnapshot()
+	{
+		return nextSnapshot;
+	}
+
+	/**
+	 * Publish a snapshot that has been filled in by the model. The previously
+	 * published snapshot will be filled in next.
+	 * (Only used by the Simulator.)
+	 */
+	public synchronized void publishSnapshot(Snapshot snapshot)
+	{
+		nextSnapshot = publishedSnapshot;
+		publishedSnapshot = snapshot;
+		snapshotTaken = false;
+	}
+
+	/**
+	 * Has the latest snapshot been read since it was published? Until it
+	 * has, there is no point in filling in a new one.
+	 * (Only used by the Simulator.)
+	 */
+	public synchronized boolean isSnapshotTaken()
+	{
+		return snapshotTaken;
+	}
+
+	/**
+	 * Return the running statistics of the current simulation
+	 * (population and grass totals, histograms, etc.)
+	 */
+	public Statistics getStatistics()
+	{
+		return statistics;
+	}
+	
+	/**
+	 * Set the statistics of a new simulation.
+	 * (Only used by the Simulator.)
+	 */
+	public void setStatistics(Statistics statistics)
+	{
+		this.statistics = statistics;
 	}
 
 	/*
@@ -199,10 +380,18 @@ public class World
 	 */
 	public HashMap<String, Integer> getDefaultGenome(OccupantType type)
 	{
-		if (type == OccupantType.HERBIVORE) return Herbivore.defaultGenome.asHashMap();
-		else if (type == OccupantType.CARNIVORE) return Carnivore.defaultGenome.asHashMap();
+		return getStartGenome(type).asHashMap();
+	}
+	
+	/**
+	 * Return the genome that the initial population of this type is created with.
+	 */
+	public Genome getStartGenome(OccupantType type)
+	{
+		if (type == OccupantType.HERBIVORE) return herbivoreGenome;
+		else if (type == OccupantType.CARNIVORE) return carnivoreGenome;
 		else {
-			EcologiaIO.error("Invalid OccupantType passed to World.getDefaultGenome()",
+			EcologiaIO.error("Invalid OccupantType passed to World.getStartGenome()",
 					EcologiaIO.FATAL_ERROR);
 			return null;
 		}
@@ -219,8 +408,8 @@ public class World
 		Genome genome = new Genome(mutationRate, speed, stamina, sight, metabolism,
 								   ageLimit, strength, reproductiveEnergy, maturityAge,
 								   gestation, reproductionRate);
-		if (type == OccupantType.HERBIVORE) Herbivore.defaultGenome = genome;
-		else if (type == OccupantType.CARNIVORE) Carnivore.defaultGenome = genome;
+		if (type == OccupantType.HERBIVORE) herbivoreGenome = genome;
+		else if (type == OccupantType.CARNIVORE) carnivoreGenome = genome;
 	}
 
 	/**
@@ -236,6 +425,27 @@ public class World
 		}
 	}
 
+	/**
+	 * Take a snapshot of the current parameter settings, to be used for the
+	 * duration of a run. This is called by the Simulator on construction;
+	 * later changes via setParam() only take effect on the next run.
+	 * @return the new snapshot
+	 */
+	public Parameters snapshotParameters()
+	{
+		runParameters = new Parameters(parameters);
+		return runParameters;
+	}
+	
+	/**
+	 * Return the fixed parameters of the current run (null before the
+	 * Simulator has been created).
+	 */
+	public Parameters getParameters()
+	{
+		return runParameters;
+	}
+
 	/**
 	 * Set a parameter value.
 	 */
@@ -284,11 +494,74 @@ public class World
 		return running;
 	}
 
+	public long getSeed()
+	{
+		return seed;
+	}
+
+	/**
+	 * Set the seed for all following runs, making them reproducible.
+	 */
+	public void setSeed(long seed)
+	{
+		this.seed = seed;
+		fixedSeed = true;
+	}
+
+	/**
+	 * Derive the seed of an independent random number stream from the seed
+	 * of the run. The same subsystem and index always give the same seed, so
+	 * a stream does not depend on when (or in which thread) it is created.
+	 * @param subsystem Which part of the simulation the stream is for
+	 * @param index Which stream of that subsystem (e.g. an animal ID)
+	 */
+	public long deriveSeed(int subsystem, long index)
+	{
+		return mix(mix(seed + (subsystem+1) * GOLDEN_GAMMA) + index * GOLDEN_GAMMA);
+	}
+
+	/**
+	 * Scramble the bits of a number (the SplitMix64 finaliser).
+	 */
+	private static long mix(long z)
+	{
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	public boolean isPublishing()
+	{
+		return publishing;
+	}
+
+	public void setPublishing(boolean publishing)
+	{
+		this.publishing = publishing;
+	}
+
 	public void setRunning(boolean running) 
 	{
 		this.running = running;
 	}
 
+	/**
+	 * Stop this run because of a break error.
+	 */
+	public void stopByError()
+	{
+		stoppedByError = true;
+		running = false;
+	}
+	
+	/**
+	 * Has this run been stopped by a break error?
+	 */
+	public boolean isStoppedByError()
+	{
+		return stoppedByError;
+	}
+
 	public int getTurn() 
 	{
 		return turn;
@@ -309,7 +582,7 @@ public class World
 	{
 		nextID++;
 		if (nextID == Integer.MAX_VALUE)
-			EcologiaIO.error("Animal ID number integer overflow!",
+			EcologiaIO.error("Animal ID number integer overflow!", this,
 							 EcologiaIO.BREAK_ERROR);
 		return nextID;
 	}
@@ -317,7 +590,7 @@ public class World
 	/**
 	 * Increment the generation counter as necessary.
 	 */
-	public void incGeneration(int n)
+	public synchronized void incGeneration(int n)
 	{
 		if (n > highestGeneration) {
 			highestGeneration = n;
@@ -329,12 +602,10 @@ public class World
 		return highestGeneration;
 	}
 	
-	public void setAnimals(ArrayList<HashMap<String, Integer>> animalInfo)
-	{
-		animals = animalInfo;
-	}
-	
-	public ArrayList<String> collectNews()
+	/**
+	 * Return the buffer of recent news items.
+	 */
+	public NewsBuffer getNews()
 	{
 		return news;
 	}
@@ -18,11 +18,13 @@ import model.*;
 public class EcoTest
 {
 	private boolean testing;
+	private Simulator simulator;
 	
 	int tpcX, tpcY;
 	
-	public EcoTest()
+	public EcoTest(Simulator simulator)
 	{
+		this.simulator = simulator;
 		testing = false; //Is a test supposed to be run?
 	}
 	
@@ -43,21 +45,21 @@ public class EcoTest
 	 */
 	public void reproduceMidwinter()
 	{
-		int turn = World.getInstance().getTurn();
+		int turn = simulator.getWorld().getTurn();
 		if (turn == 1) {
 			EcologiaIO.debug("Ecotest: Creating a herbivore at (1, 0)");
-			Herbivore herbivore = new Herbivore(World.getInstance().getNextID(), 
-												Herbivore.defaultGenome, -1, 1, 0, 
-												World.getInstance().getParam("startEnergyHerbivores"), 0);
-			Simulator.addAnimal(herbivore);
+			Herbivore herbivore = new Herbivore(simulator, simulator.getWorld().getNextID(), 
+												Herbivore.DEFAULT_GENOME, -1, 1, 0, 
+												simulator.getWorld().getParam("startEnergyHerbivores"), 0);
+			simulator.addAnimal(herbivore);
 			EcologiaIO.debug("Ecotest: Creating a carnivore at (1, 3)");
-			Carnivore carnivore = new Carnivore(World.getInstance().getNextID(), 
-												Carnivore.defaultGenome, -1, 1, 3, 
-												World.getInstance().getParam("startEnergyCarnivores"), 0);
-			Simulator.addAnimal(carnivore);
+			Carnivore carnivore = new Carnivore(simulator, simulator.getWorld().getNextID(), 
+												Carnivore.DEFAULT_GENOME, -1, 1, 3, 
+												simulator.getWorld().getParam("startEnergyCarnivores"), 0);
+			simulator.addAnimal(carnivore);
 		}
 		if (turn == 2) {
-			Simulator.getAnimal(1, 3).move(Direction.UP);
+			simulator.getAnimal(1, 3).move(Direction.UP);
 			EcologiaIO.debug("Ecotest: herbivore at (1, 0) should flee up -> freeze");
 			EcologiaIO.debug("Ecotest: Midwinter bug is fixed, so no more ice ;-)");
 		}
@@ -68,12 +70,12 @@ public class EcoTest
 	 */
 	public void reproductionTest()
 	{
-		int turn = World.getInstance().getTurn();
+		int turn = simulator.getWorld().getTurn();
 		if (turn == 1) {
 			EcologiaIO.debug("Creating a carnivore at (1, 1) with 301 energy");
-			Carnivore carnivore = new Carnivore(World.getInstance().getNextID(), 
-					Carnivore.defaultGenome, -2, 1, 1, 301, 0);
-			Simulator.addAnimal(carnivore);
+			Carnivore carnivore = new Carnivore(simulator, simulator.getWorld().getNextID(), 
+					Carnivore.DEFAULT_GENOME, -2, 1, 1, 301, 0);
+			simulator.addAnimal(carnivore);
 		}
 		if (turn == 25) {
 			EcologiaIO.debug("Carnivore at (1, 1) should reproduce...");
@@ -86,7 +88,7 @@ public class EcoTest
 	public void newsTest()
 	{
 		EcologiaIO.debug("Testing news ticker...");
-		World.getInstance().giveNews("Testing 123...");
+		simulator.getWorld().giveNews("Testing 123...");
 	}
 	
 	/**
@@ -94,18 +96,18 @@ public class EcoTest
 	 */
 	public void testPopulationChanges()
 	{
-		int turn = World.getInstance().getTurn();
+		int turn = simulator.getWorld().getTurn();
 		if (turn == 1) {
 			tpcX = 0;
 			tpcY = 0;
 			EcologiaIO.debug("Creating a carnivore at (0, 0)");
-			Carnivore carnivore = new Carnivore(World.getInstance().getNextID(), 
-												Carnivore.defaultGenome, -1, tpcX, tpcY, 
-												World.getInstance().getParam("startEnergyCarnivores"), 0);
-			Simulator.addAnimal(carnivore);
+			Carnivore carnivore = new Carnivore(simulator, simulator.getWorld().getNextID(), 
+												Carnivore.DEFAULT_GENOME, -1, tpcX, tpcY, 
+												simulator.getWorld().getParam("startEnergyCarnivores"), 0);
+			simulator.addAnimal(carnivore);
 		}
 		else if (turn < 5 && turn > 1) {
-			Animal carnivore = Simulator.getAnimal(tpcX, tpcY);
+			Animal carnivore = simulator.getAnimal(tpcX, tpcY);
 			if (!carnivore.move(Direction.BOTTOM_RIGHT)) {
 				EcologiaIO.debug("Failed to move!");
 			}
@@ -115,7 +117,7 @@ public class EcoTest
 		}
 		else if (turn == 5) {
 			EcologiaIO.debug("Deleting carnivore at ("+tpcX+", "+tpcY+")");
-			Simulator.removeAnimal(tpcX, tpcY, OccupantType.CARNIVORE);
+			simulator.removeAnimal(tpcX, tpcY, OccupantType.CARNIVORE, null);
 		}
 	}
 }
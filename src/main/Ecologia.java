@@ -1,5 +1,10 @@
 package main;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Locale;
+
 import controller.World;
 import view.GUI;
 import model.Simulator;
@@ -38,6 +43,10 @@ public class Ecologia implements Runnable
 	public static final String version = "2.0 Saiga";
 
 	private static boolean noGUI = false;
+	private static int ensembleReplicates = 0; //If > 0, run an ensemble instead
+	private static int ensembleThreads = Runtime.getRuntime().availableProcessors();
+	private static String ensembleOutput = "ensemble.csv";
+	private static ArrayList<String> sweeps = new ArrayList<String>(); //Parameter names and value lists
 	
 	private GUI gui;
 	private Simulator simulator;
@@ -72,8 +81,79 @@ public class Ecologia implements Runnable
 				EcologiaIO.debugging = true;
 			else if (a.equals("--analyse") || a.equals("-a"))
 				EcologiaIO.analysing = true;
+			else if (a.equals("--log-rotate")) {
+				EcologiaIO.keepLogs = Integer.parseInt(args[i+1]);
+				i++;
+			}
+			else if (a.equals("--log-gzip"))
+				EcologiaIO.compressLogs = true;
+			else if (a.equals("--log-policy")) {
+				if (i+1 < args.length && args[i+1].equals("drop")) EcologiaIO.dropLogMessages = true;
+				else if (i+1 < args.length && args[i+1].equals("block")) EcologiaIO.dropLogMessages = false;
+				else EcologiaIO.error("--log-policy must be either 'block' or 'drop'");
+				i++;
+			}
+			else if (a.equals("--events")) {
+				try {
+					EventLog.open(Paths.get(args[i+1]));
+				}
+				catch (IOException ioe) {
+					EcologiaIO.error("Failed to open the event log "+args[i+1]+".", ioe);
+				}
+				i++;
+			}
+			else if (a.equals("--export-events")) {
+				try {
+					EventLogReader.exportCSV(Paths.get(args[i+1]), Paths.get("."));
+					System.exit(0);
+				}
+				catch (IOException ioe) {
+					EcologiaIO.error("Failed to export the event log "+args[i+1]+".", ioe);
+					System.exit(1);
+				}
+			}
+			else if (a.equals("--timeseries")) {
+				try {
+					TimeSeries.open(Paths.get(args[i+1]));
+				}
+				catch (IOException ioe) {
+					EcologiaIO.error("Failed to open the time series file "+args[i+1]+".", ioe);
+				}
+				i++;
+			}
+			else if (a.equals("--timeseries-every")) {
+				TimeSeries.every = Math.max(1, Integer.parseInt(args[i+1]));
+				i++;
+			}
+			else if (a.equals("--timeseries-flush")) {
+				TimeSeries.flushEvery = Integer.parseInt(args[i+1]);
+				i++;
+			}
 			else if (a.equals("--no-graphics"))
 				noGUI = true;
+			else if (a.equals("--batch")) {
+				EcologiaIO.batch = true;
+				noGUI = true;
+			}
+			else if (a.equals("--ensemble")) {
+				ensembleReplicates = Integer.parseInt(args[i+1]);
+				EcologiaIO.batch = true;
+				noGUI = true;
+				i++;
+			}
+			else if (a.equals("--sweep")) {
+				sweeps.add(args[i+1]);
+				sweeps.add(args[i+2]);
+				i += 2;
+			}
+			else if (a.equals("--threads")) {
+				ensembleThreads = Math.max(1, Integer.parseInt(args[i+1]));
+				i++;
+			}
+			else if (a.equals("--ensemble-out")) {
+				ensembleOutput = args[i+1];
+				i++;
+			}
 			else if (a.equals("--autorun")) {
 				World.getInstance().setParam("autorun", new Integer(args[i+1]));
 				i++;
@@ -82,6 +162,10 @@ public class Ecologia implements Runnable
 				World.getInstance().readConfigFile(args[i+1]);
 				i++;
 			}
+			else if (a.equals("--seed")) {
+				World.getInstance().setSeed(Long.parseLong(args[i+1]));
+				i++;
+			}
 			else if (a.equals("--timelapse")) {
 				World.getInstance().setParam("timelapse", new Integer(args[i+1]));
 				i++;
@@ -94,6 +178,12 @@ public class Ecologia implements Runnable
 		if (EcologiaIO.logging) EcologiaIO.archiveLog();
 		EcologiaIO.printStatus();
 		
+		//Batch mode cannot fall back to the GUI
+		if (EcologiaIO.batch && (World.getInstance().getParam("autorun") <= 0)) {
+			EcologiaIO.error("Batch mode requires --autorun.");
+			System.exit(EcologiaIO.EXIT_USAGE);
+		}
+		if (ensembleReplicates > 0) runEnsemble();
 		//Only use no-graphics mode when on autorun
 		if (noGUI && (World.getInstance().getParam("autorun") < 0)) {
 			EcologiaIO.error("Returning to graphics mode as autorun not enabled.");
@@ -105,6 +195,36 @@ public class Ecologia implements Runnable
 		eco = new Ecologia();
 	}
 
+	/**
+	 * Run an ensemble of simulations as set up on the commandline, then quit.
+	 */
+	private static void runEnsemble()
+	{
+		if (EventLog.isRecording()) {
+			EcologiaIO.error("The event log cannot be used with --ensemble.");
+			System.exit(EcologiaIO.EXIT_USAGE);
+		}
+		if (TimeSeries.isRecording()) {
+			EcologiaIO.error("The time series cannot be used with --ensemble (see --ensemble-out).");
+			System.exit(EcologiaIO.EXIT_USAGE);
+		}
+		Ensemble ensemble = new Ensemble(World.getInstance(), ensembleReplicates,
+										 ensembleThreads, Paths.get(ensembleOutput));
+		for (int s = 0; s < sweeps.size(); s += 2) {
+			String[] list = sweeps.get(s+1).split(",");
+			int[] values = new int[list.length];
+			try {
+				for (int v = 0; v < list.length; v++) values[v] = Integer.parseInt(list[v].trim());
+			}
+			catch (NumberFormatException nfe) {
+				EcologiaIO.error("Invalid value list for --sweep "+sweeps.get(s)+": "+sweeps.get(s+1));
+				System.exit(EcologiaIO.EXIT_USAGE);
+			}
+			ensemble.sweep(sweeps.get(s), values);
+		}
+		System.exit(ensemble.run());
+	}
+
 	/**
 	 * The Singleton method.
 	 */
@@ -119,11 +239,14 @@ public class Ecologia implements Runnable
 	private Ecologia()
 	{
 		EcologiaIO.log("Launching Ecologia...");
-		simulator = new Simulator();
+		//Without a GUI, nobody looks at the snapshots
+		World.getInstance().setPublishing(!noGUI);
+		simulator = new Simulator(World.getInstance());
 		if (!noGUI) gui = new GUI();
-		//tester = new EcoTest();
+		//tester = new EcoTest(simulator);
 		EcologiaIO.debug("Launch completed.");
-		if (World.getInstance().getParam("autorun") > 0) autorun();
+		if (EcologiaIO.batch) runBatch();
+		else if (World.getInstance().getParam("autorun") > 0) autorun();
 	}
 	
 	/**
@@ -135,6 +258,46 @@ public class Ecologia implements Runnable
 		World.getInstance().setParam("stopAt", -1);
 		startThread();
 	}
+	
+	/**
+	 * Perform a batch run: run the simulation in this thread as fast as it
+	 * will go, then print a summary and exit. The exit code is EXIT_OK,
+	 * or EXIT_BREAK_ERROR if the run was stopped by an error.
+	 */
+	private void runBatch()
+	{
+		EcologiaIO.log("Performing batch run for "+World.getInstance().getParam("autorun")+" updates.");
+		World.getInstance().setParam("stopAt", -1);
+		World.getInstance().setRunning(true);
+		long start = System.nanoTime();
+		while (World.getInstance().isRunning()) {
+			iterate();
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		boolean failed = World.getInstance().isStoppedByError();
+		System.out.println("{"+summarise(World.getInstance(), failed, seconds)+"}");
+		System.exit(failed ? EcologiaIO.EXIT_BREAK_ERROR : EcologiaIO.EXIT_OK);
+	}
+	
+	/**
+	 * Describe the result of a batch run as JSON fields (without the braces).
+	 * @param world The world of the run
+	 * @param failed Was the run stopped by an error?
+	 * @param seconds How long the run took
+	 */
+	static String summarise(World world, boolean failed, double seconds)
+	{
+		String result;
+		if (failed) result = "error";
+		else if (world.getHerbivoreCount() == 0 && world.getCarnivoreCount() == 0) result = "extinct";
+		else result = "completed";
+		return String.format(Locale.ROOT,
+				"\"result\": \"%s\", \"seed\": %d, \"updates\": %d, \"herbivores\": %d, \"carnivores\": %d, "+
+				"\"grassDensity\": %d, \"generation\": %d, \"seconds\": %.3f, \"updatesPerSecond\": %.1f",
+				result, world.getSeed(), world.getTurn(), world.getHerbivoreCount(), world.getCarnivoreCount(),
+				world.getAverageGrassDensity(), world.getGeneration(), seconds,
+				seconds > 0 ? world.getTurn() / seconds : 0.0);
+	}
 
 	/**
 	 * Reset the simulator in order to start a new run.
@@ -146,9 +309,11 @@ public class Ecologia implements Runnable
 	{
 		EcologiaIO.archiveLog();
 		EcologiaIO.log("Resetting Ecologia...");
+		EventLog.newRun();
+		TimeSeries.newRun();
 		World.getInstance().reset();
 		simulator = null;
-		simulator = new Simulator();
+		simulator = new Simulator(World.getInstance());
 		if (!noGUI) {
 			gui.reset();
 			gui = null;
@@ -177,30 +342,37 @@ public class Ecologia implements Runnable
 			iterate();
 		}
 		World.getInstance().giveNews("Simulation has stopped.");
-		if (!noGUI) gui.update(); //Make sure the above news is displayed by the GUI
 	}
 	
 	/**
-	 * Perform one iteration of the simulation.
+	 * Perform one iteration of the simulation. (The GUI is not updated
+	 * from here, it samples the state of the simulation at its own frame rate.)
 	 */
 	public synchronized void iterate()
 	{
 		int autorun = World.getInstance().getParam("autorun");
 		World.getInstance().incrementTurn();
 		int turn = World.getInstance().getTurn();
-		EcologiaIO.log("Executing update "+turn);
+		EcologiaIO.log(() -> "Executing update "+World.getInstance().getTurn());
 		//if (EcologiaIO.debugging) tester.runTest();
 		simulator.update();
-		EcologiaIO.log("Average grass density: "+World.getInstance().getAverageGrassDensity()+"%");	
-		EcologiaIO.log("Herbivore count: "+World.getInstance().getHerbivoreCount());
-		EcologiaIO.log("Carnivore count: "+World.getInstance().getCarnivoreCount());
-		EcologiaIO.log("Generation counter: "+World.getInstance().getGeneration());
+		EcologiaIO.log(() -> "Average grass density: "+World.getInstance().getAverageGrassDensity()+"%");
+		EcologiaIO.log(() -> "Herbivore count: "+World.getInstance().getHerbivoreCount());
+		EcologiaIO.log(() -> "Carnivore count: "+World.getInstance().getCarnivoreCount());
+		EcologiaIO.log(() -> "Generation counter: "+World.getInstance().getGeneration());
+		EventLog.tick(turn, World.getInstance().getHerbivoreCount(),
+					  World.getInstance().getCarnivoreCount(),
+					  World.getInstance().getAverageGrassDensity(),
+					  World.getInstance().getGeneration());
+		TimeSeries.record(turn, World.getInstance().getHerbivoreCount(),
+						  World.getInstance().getCarnivoreCount(),
+						  World.getInstance().getAverageGrassDensity(),
+						  World.getInstance().getGeneration());
 
 		//If the stopAt number is reached, pause the simulation
 		if (World.getInstance().getParam("stopAt") == turn) {
 			World.getInstance().setRunning(false);
 		}
-		if (!noGUI) gui.update();
 		//Stop the simulation if there are no more animals
 		if (World.getInstance().getCarnivoreCount() == 0 &&
 			World.getInstance().getHerbivoreCount() == 0) {
@@ -211,16 +383,21 @@ public class Ecologia implements Runnable
 		//Check if an autorun has completed
 		if (turn == autorun) {
 			EcologiaIO.log("Completed autorun, shutting down.");
+			if (EcologiaIO.batch) {
+				World.getInstance().setRunning(false);
+				return;
+			}
 			System.exit(0);
 		}
-		//Pause for as long as the user wants
+		//Pause for as long as the user wants (batch runs never pause)
+		if (EcologiaIO.batch) return;
 		try {
 			int sleeptime = World.getInstance().getParam("timelapse");
 			if (sleeptime < 0) {
 				EcologiaIO.error("timelapse < 0");
 				sleeptime = 0;
 			}
-			Thread.sleep(sleeptime);
+			if (sleeptime > 0) Thread.sleep(sleeptime);
 		}
 		catch (InterruptedException ie) {}
 	}
@@ -237,11 +414,25 @@ public class Ecologia implements Runnable
 		System.out.println("--logging -l	Enable logging to file");
 		System.out.println("--verbose -v	Give verbose output");
 		System.out.println("--debug   -d	Print debugging information");
-		System.out.println("--analyse -a	Print simulation analysis information\n");
-		System.out.println("--no-graphics	Do not start the GUI (requires --autorun)\n");
+		System.out.println("--analyse -a	Print simulation analysis information");
+		System.out.println("--log-policy <block|drop>	Wait or drop messages if the log file can't keep up");
+		System.out.println("--log-rotate <n>	Rotate old log files instead of archiving them, keeping n");
+		System.out.println("--log-gzip	Compress rotated log files");
+		System.out.println("--events <file>	Record births, deaths and population counts in a binary event log");
+		System.out.println("--export-events <file>	Convert an event log to CSV files in this directory, then quit");
+		System.out.println("--timeseries <file>	Write the population counts of each update to a CSV file");
+		System.out.println("--timeseries-every <n>	Only write every n-th update to the time series");
+		System.out.println("--timeseries-flush <n>	Flush the time series every n rows (0: only when the buffer is full)\n");
+		System.out.println("--no-graphics	Do not start the GUI (requires --autorun)");
+		System.out.println("--batch	Run headless and as fast as possible, print a summary and exit (requires --autorun)");
+		System.out.println("--ensemble <n>	Run n replicates of each parameter combination in parallel (requires --autorun)");
+		System.out.println("--sweep <param> <v1,v2,...>	Run the ensemble for each of these values of a parameter");
+		System.out.println("--threads <n>	The number of simulations to run at once (default: number of CPUs)");
+		System.out.println("--ensemble-out <file>	Where to write the ensemble results (default: ensemble.csv)\n");
 		System.out.println("--config <file>	Specify a configuration file to use");
 		System.out.println("--autorun <n>	Autorun the simulation for n updates, then quit");
-		System.out.println("--timelapse <ms>	Set the timelapse between updates\n");
+		System.out.println("--timelapse <ms>	Set the timelapse between updates");
+		System.out.println("--seed <n>	Seed the random numbers, to make runs reproducible\n");
 		System.out.println("Copyright (c) 2014-2016 Daniel Vedder");
 		System.out.println("Licensed under the terms of the GNU General Public License v3\n");
 	}
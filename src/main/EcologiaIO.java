@@ -1,12 +1,24 @@
 package main;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
 import javax.swing.JOptionPane;
 
 import controller.World;
@@ -24,10 +36,34 @@ public abstract class EcologiaIO
 	public static boolean debugging = false;
 	public static boolean analysing = false;
 	public static boolean logging = false;
+	public static boolean dropLogMessages = false; //Drop log lines if the writer can't keep up?
+	public static boolean batch = false; //In batch mode, errors go to stderr and never open a dialog
+	
+	public static int keepLogs = 0; //If > 0, rotate old logs and keep this many, else append them to the archive
+	public static boolean compressLogs = false; //Compress rotated logs?
+	
+	private static final String LOG_FILE = "ecologia.log";
+	private static final String ARCHIVE_FILE = "ecologia-archive.log";
+	//Rotated logs: ecologia.log.<date>[-<n>][.gz] (n counts rotations within the same second)
+	private static final Pattern ROTATED_LOG = Pattern.compile("ecologia\\.log\\.(\\d{8}-\\d{6})(-(\\d+))?(\\.gz)?");
+	private static LogWriter logWriter; //Writes the log file in the background
+	//Log lines are written under the shared read lock, while closing and archiving
+	//the log takes the write lock, so that no line is lost to a log being archived
+	private static final ReentrantReadWriteLock logLock = new ReentrantReadWriteLock();
+	private static boolean shutdownHookAdded = false;
+	private static final SimpleDateFormat dateFormat = new SimpleDateFormat("dd.MM.yyyy HH:mm:ss - ");
+	private static long dateSecond = -1; //The second that the cached time stamp is for
+	private static String date; //The cached time stamp
 	
 	public final static int CONTINUABLE_ERROR = 0;
 	public final static int BREAK_ERROR = 1;
 	public final static int FATAL_ERROR = 2;
+	
+	//Exit codes in batch mode
+	public final static int EXIT_OK = 0;
+	public final static int EXIT_USAGE = 1;
+	public final static int EXIT_BREAK_ERROR = 2;
+	public final static int EXIT_FATAL_ERROR = 3;
 
 	/**
 	 * Print a log message if the verbose flag is set.
@@ -46,6 +82,16 @@ public abstract class EcologiaIO
 		}
 	}
 	
+	/**
+	 * As log(String), but the message is only put together if it is
+	 * actually going to be printed. Use this where building the message
+	 * is not free, e.g. log(() -> "Count: "+n).
+	 */
+	public static void log(Supplier<String> message)
+	{
+		if (verbose) log(message.get());
+	}
+	
 	/**
 	 * Print a debug message if the debug flag is set.
 	 * This is primarily intended for use during development.
@@ -62,15 +108,21 @@ public abstract class EcologiaIO
 			if (logging) writeFile(message);
 		}
 	}
+	
+	/**
+	 * As debug(String), but the message is only put together if it is
+	 * actually going to be printed.
+	 */
+	public static void debug(Supplier<String> message)
+	{
+		if (debugging) debug(message.get());
+	}
 
 	/**
 	 * Print an analysis message if the analysing flag is set.
 	 * This is meant to be used for simulation data output relevant only to a
 	 * current experiment.
 	 *
-	 * FIXME A lot of analysis() calls slow the program down drastically.
-	 * Implement caching?
-	 *
 	 * @param message
 	 */
 	public static void analysis(String message)
@@ -82,6 +134,15 @@ public abstract class EcologiaIO
 		}
 	}
 	
+	/**
+	 * As analysis(String), but the message is only put together if it is
+	 * actually going to be printed.
+	 */
+	public static void analysis(Supplier<String> message)
+	{
+		if (analysing) analysis(message.get());
+	}
+	
 	/**
 	 * Print an error message
 	 * @param message
@@ -89,7 +150,8 @@ public abstract class EcologiaIO
 	public static void error(String message)
 	{
 		message = "ERROR: "+message;
-		System.out.println(message);
+		if (batch) System.err.println(message);
+		else System.out.println(message);
 		if (logging) writeFile(message);
 	}
 	
@@ -101,75 +163,176 @@ public abstract class EcologiaIO
 	public static void error(String message, Exception error)
 	{
 		message = "ERROR: "+message;
-		System.out.println(message);
+		if (batch) System.err.println(message);
+		else System.out.println(message);
 		error.printStackTrace();
 		//TODO Print stack trace to file
 		if (logging) writeFile(message);
 	}
 	
 	/**
-	 * Give an error message and pause/shut down
+	 * Give an error message and pause/shut down the simulation of the
+	 * default world. (See error(String, World, int).)
 	 * @param message
 	 * @param errorType CONTINUABLE_ERROR, BREAK_ERROR, FATAL_ERROR
 	 */
 	public static void error(String message, int errorType)
 	{
-		//FIXME How do we deal with break/fatal errors when in no-graphics mode?
+		error(message, World.getInstance(), errorType);
+	}
+	
+	/**
+	 * Give an error message and pause/shut down. A break error only stops
+	 * the simulation of the given world. In batch mode, there is nobody to
+	 * click away a dialog or to resume a paused simulation, so a break error
+	 * ends the run and a fatal error exits with an error code.
+	 * @param message
+	 * @param world The world whose simulation has hit the error
+	 * @param errorType CONTINUABLE_ERROR, BREAK_ERROR, FATAL_ERROR
+	 */
+	public static void error(String message, World world, int errorType)
+	{
 		String logMessage = "ERROR: "+message;
 		if (errorType == BREAK_ERROR) {
-			World.getInstance().setRunning(false);
-			logMessage = logMessage+" - simulation paused";
-			JOptionPane.showMessageDialog(null, message, "Error!",
-										  JOptionPane.ERROR_MESSAGE);
+			world.stopByError();
+			if (batch) {
+				logMessage = logMessage+" - simulation stopped";
+			}
+			else {
+				logMessage = logMessage+" - simulation paused";
+				showDialog(message);
+			}
 		}
 		else if (errorType == FATAL_ERROR) {
 			logMessage = logMessage+" - simulation will terminate";
-			JOptionPane.showMessageDialog(null, message+"\nEcologia is shutting down.",
-										  "Error!", JOptionPane.ERROR_MESSAGE);
+			if (!batch) showDialog(message+"\nEcologia is shutting down.");
 		}
-		System.out.println(logMessage);
+		if (batch) System.err.println(logMessage);
+		else System.out.println(logMessage);
 		if (logging) writeFile(logMessage);
-		if (errorType == FATAL_ERROR) System.exit(0);
+		if (errorType == FATAL_ERROR) System.exit(batch ? EXIT_FATAL_ERROR : 0);
 	}
 	
 	/**
-	 * Archive the current log file, ready for a new run
+	 * Show an error dialog. (This is kept apart so that Swing is not even
+	 * loaded unless it is needed.)
+	 */
+	private static void showDialog(String message)
+	{
+		JOptionPane.showMessageDialog(null, message, "Error!", JOptionPane.ERROR_MESSAGE);
+	}
+	
+	/**
+	 * Archive the current log file, ready for a new run. By default, the old
+	 * log is appended to the archive file. If keepLogs is set, it is renamed
+	 * instead (and compressed, if compressLogs is set), and only the newest
+	 * keepLogs of these old logs are kept. Either way, the old log is never
+	 * read into memory, so this is fast even for very large logs.
 	 */
 	public static void archiveLog()
 	{
-		File logfile = new File("ecologia.log");
-		//Read in the old log and rewrite it to an archive
-		//XXX: probably an expensive operation on long log files
-		String log = "\n - archived on "+EcologiaIO.getDate()+"\n";
+		Path logfile = Paths.get(LOG_FILE);
+		IOException archiveError = null;
+		//Other threads wait with their log lines until the new log is ready
+		logLock.writeLock().lock();
 		try {
-			BufferedReader logReader = new BufferedReader(new FileReader(logfile));
-			String line = logReader.readLine();
-			while (line != null) {
-				log = log+line+"\n";
-				line = logReader.readLine();
+			closeLog(); //Make sure everything has been written to the old log
+			if (Files.exists(logfile)) {
+				try {
+					if (keepLogs > 0) rotateLog(logfile);
+					else appendToArchive(logfile);
+				}
+				catch (IOException ioe) {
+					archiveError = ioe;
+				}
+			}
+			//Then renew the old logfile
+			try {
+				Files.write(logfile, (" === ECOLOGIA "+Ecologia.version+" LOG ===\n").getBytes(StandardCharsets.UTF_8));
+			}
+			catch (IOException ioe) {
+				logging = false;
+				error("Failed to write to logfile! Logging turned off.", ioe);
+			}
+		}
+		finally {
+			logLock.writeLock().unlock();
+		}
+		//Only report this now, as the error message may go to the new log
+		if (archiveError != null) error("Failed to archive the old log file.", archiveError);
+	}
+	
+	/**
+	 * Append the log file to the archive file (in the file system, without
+	 * copying it through Java if possible).
+	 */
+	private static void appendToArchive(Path logfile) throws IOException
+	{
+		try (FileChannel in = FileChannel.open(logfile, StandardOpenOption.READ);
+			 FileChannel out = FileChannel.open(Paths.get(ARCHIVE_FILE), StandardOpenOption.CREATE,
+												StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+			out.write(ByteBuffer.wrap(("\n - archived on "+getDate()+"\n").getBytes(StandardCharsets.UTF_8)));
+			long position = 0;
+			long size = in.size();
+			while (position < size) {
+				position += in.transferTo(position, size - position, out);
+			}
+		}
+	}
+	
+	/**
+	 * Rename the log file to ecologia.log.<date>, compress it if wanted,
+	 * and delete the oldest rotated logs beyond the retention limit.
+	 */
+	private static void rotateLog(Path logfile) throws IOException
+	{
+		String name = LOG_FILE+"."+new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+		Path rotated = Paths.get(name);
+		for (int n = 1; Files.exists(rotated) || Files.exists(Paths.get(rotated+".gz")); n++) {
+			rotated = Paths.get(name+"-"+n);
+		}
+		Files.move(logfile, rotated, StandardCopyOption.ATOMIC_MOVE);
+		if (compressLogs) {
+			Path compressed = Paths.get(rotated+".gz");
+			Path temporary = Paths.get(rotated+".gz.tmp");
+			try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(temporary), 65536)) {
+				Files.copy(rotated, out);
+			}
+			Files.move(temporary, compressed, StandardCopyOption.ATOMIC_MOVE);
+			Files.delete(rotated);
+		}
+		//Only touch files named like rotated logs, and sort them by date and number
+		ArrayList<Path> oldLogs = new ArrayList<Path>();
+		try (DirectoryStream<Path> dir = Files.newDirectoryStream(logfile.toAbsolutePath().getParent(),
+																  LOG_FILE+".*")) {
+			for (Path p : dir) {
+				if (ROTATED_LOG.matcher(p.getFileName().toString()).matches()) oldLogs.add(p);
 			}
-			logReader.close();
-			
-			File logArchive = new File("ecologia-archive.log");
-			FileWriter logWriter = new FileWriter(logArchive, true);
-			logWriter.write(log);
-			logWriter.flush();
-			logWriter.close();
-		}
-		catch (IOException ioe) { /*ignore*/ }
-		//Then renew the old logfile
-		try {
-			FileWriter writer = new FileWriter(logfile, false);
-			writer.write(" === ECOLOGIA "+Ecologia.version+" LOG ===\n");
-			writer.flush();
-			writer.close();
 		}
-		catch (IOException ioe) {
-			logging = false;
-			error("Failed to write to logfile! Logging turned off.", ioe);
+		oldLogs.sort((a, b) -> {
+			Matcher ma = ROTATED_LOG.matcher(a.getFileName().toString());
+			Matcher mb = ROTATED_LOG.matcher(b.getFileName().toString());
+			ma.matches();
+			mb.matches();
+			int byDate = ma.group(1).compareTo(mb.group(1));
+			if (byDate != 0) return byDate;
+			return Long.compare(rotationNumber(ma), rotationNumber(mb));
+		});
+		for (int i = 0; i < oldLogs.size() - keepLogs; i++) {
+			Files.delete(oldLogs.get(i));
 		}
 	}
 	
+	/**
+	 * Return the number of a rotated log within its second (0 if it has none).
+	 */
+	private static long rotationNumber(Matcher rotatedLog)
+	{
+		String n = rotatedLog.group(3);
+		if (n == null) return 0;
+		else return Long.parseLong(n);
+	}
+	
 	/**
 	 * Print out which flags are set.
 	 */
@@ -185,28 +348,78 @@ public abstract class EcologiaIO
 	}
 	
 	/**
-	 * Write a message to file
+	 * Write a message to file (in the background, see LogWriter)
 	 */
 	private static void writeFile(String message)
 	{
-		File logfile = new File("ecologia.log");
+		logLock.readLock().lock();
 		try {
-			FileWriter writer = new FileWriter(logfile, true);
-			writer.write(getDate() + message + "\n");
-			writer.flush();
-			writer.close();
+			LogWriter writer = getLogWriter();
+			if (writer != null) writer.write(getDate() + message);
 		}
-		catch (IOException ioe) {
-			logging = false;
-			error("Failed to write to logfile! Logging turned off.", ioe);
+		finally {
+			logLock.readLock().unlock();
 		}
 	}
 	
 	/**
-	 * @return time stamp
+	 * Return the log writer, opening the log file if necessary.
+	 * @return the writer, or null if the file could not be opened
 	 */
-	private static String getDate()
+	private static synchronized LogWriter getLogWriter()
 	{
-		return new SimpleDateFormat("dd.MM.yyyy HH:mm:ss - ").format(new Date());
+		if (logWriter == null && logging) {
+			try {
+				logWriter = new LogWriter(Paths.get(LOG_FILE), dropLogMessages);
+			}
+			catch (IOException ioe) {
+				logging = false;
+				error("Failed to write to logfile! Logging turned off.", ioe);
+				return null;
+			}
+			//Make sure the log is written out when the program quits
+			if (!shutdownHookAdded) {
+				Runtime.getRuntime().addShutdownHook(new Thread("Ecologia log shutdown") {
+					public void run() {
+						closeLog();
+					}
+				});
+				shutdownHookAdded = true;
+			}
+		}
+		return logWriter;
+	}
+	
+	/**
+	 * Write out all pending log messages and close the log file.
+	 * (It is opened again when the next message is logged.)
+	 */
+	public static void closeLog()
+	{
+		logLock.writeLock().lock();
+		try {
+			synchronized (EcologiaIO.class) {
+				if (logWriter != null) {
+					logWriter.close();
+					logWriter = null;
+				}
+			}
+		}
+		finally {
+			logLock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * @return time stamp (this only changes once a second, so it is cached)
+	 */
+	private static synchronized String getDate()
+	{
+		long now = System.currentTimeMillis();
+		if (now/1000 != dateSecond) {
+			dateSecond = now/1000;
+			date = dateFormat.format(new Date(now));
+		}
+		return date;
 	}
 }
@@ -0,0 +1,192 @@
+package main;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import controller.World;
+import model.Simulator;
+
+/**
+ * An Ensemble runs many simulations side by side on a thread pool, each with
+ * its own World and Simulator: a number of replicates for every combination
+ * of the swept parameter values (or just the replicates, if nothing is swept).
+ * All runs start from a copy of the settings of a template world.
+ *
+ * The population counts of all runs are written into a single CSV file as
+ * the runs go along (every TimeSeries.every updates), with a column for the
+ * run number, the replicate and each swept parameter. When a run is done,
+ * a JSON summary line for it is printed to stdout. The seed of each run is
+ * derived from the seed of the template, so the whole ensemble can be
+ * repeated with --seed.
+ */
+public class Ensemble
+{
+	private static final int RUN_SEEDS = 100; //The seeds of the runs are derived from the template's
+
+	private World template;
+	private int replicates;
+	private int threads;
+	private Path output;
+	private ArrayList<String> sweepParams;
+	private ArrayList<int[]> sweepValues;
+
+	private BufferedWriter writer;
+	private AtomicInteger failures; //How many runs have failed?
+
+	/**
+	 * The constructor.
+	 * @param template The world whose settings all runs start from
+	 * @param replicates How many runs to do for each parameter combination
+	 * @param threads How many runs to do at the same time
+	 * @param output The CSV file to write to
+	 */
+	public Ensemble(World template, int replicates, int threads, Path output)
+	{
+		this.template = template;
+		this.replicates = replicates;
+		this.threads = threads;
+		this.output = output;
+		sweepParams = new ArrayList<String>();
+		sweepValues = new ArrayList<int[]>();
+		failures = new AtomicInteger(0);
+	}
+
+	/**
+	 * Add a parameter to sweep: every combination with the values of the
+	 * other swept parameters is run.
+	 */
+	public void sweep(String param, int[] values)
+	{
+		template.getParam(param); //Make sure it exists
+		sweepParams.add(param);
+		sweepValues.add(values);
+	}
+
+	/**
+	 * Do all the runs and wait for them to finish.
+	 * @return the exit code (EXIT_BREAK_ERROR if any run failed)
+	 */
+	public int run()
+	{
+		int combinations = 1;
+		for (int[] values : sweepValues) combinations *= values.length;
+		EcologiaIO.log("Running an ensemble of "+(combinations*replicates)+" simulations on "+
+					   threads+" threads.");
+		try {
+			writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8);
+			StringBuilder header = new StringBuilder("Run,Replicate");
+			for (String param : sweepParams) header.append(',').append(param);
+			header.append(",Updates,Herbivores,Carnivores,GrassDensity,Generations");
+			writer.write(header.toString());
+			writer.newLine();
+		}
+		catch (IOException ioe) {
+			EcologiaIO.error("Failed to open the ensemble output file "+output+".", ioe);
+			return EcologiaIO.EXIT_USAGE;
+		}
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		int run = 0;
+		for (int c = 0; c < combinations; c++) {
+			//Work out the parameter values of this combination
+			int[] values = new int[sweepParams.size()];
+			int rest = c;
+			for (int p = values.length-1; p >= 0; p--) {
+				int[] choices = sweepValues.get(p);
+				values[p] = choices[rest % choices.length];
+				rest /= choices.length;
+			}
+			for (int r = 1; r <= replicates; r++) {
+				final int runNumber = ++run;
+				final int replicate = r;
+				pool.execute(() -> runOne(runNumber, replicate, values));
+			}
+		}
+		pool.shutdown();
+		try {
+			while (!pool.awaitTermination(1, TimeUnit.MINUTES));
+		}
+		catch (InterruptedException ie) {
+			pool.shutdownNow();
+			failures.incrementAndGet();
+		}
+		try {
+			writer.close();
+		}
+		catch (IOException ioe) {
+			EcologiaIO.error("Failed to write the ensemble output file "+output+".", ioe);
+			failures.incrementAndGet();
+		}
+		if (failures.get() > 0) return EcologiaIO.EXIT_BREAK_ERROR;
+		else return EcologiaIO.EXIT_OK;
+	}
+
+	/**
+	 * Do a single run (in one of the pool threads).
+	 */
+	private void runOne(int run, int replicate, int[] values)
+	{
+		StringBuilder prefix = new StringBuilder();
+		StringBuilder json = new StringBuilder();
+		prefix.append(run).append(',').append(replicate).append(',');
+		json.append("\"run\": ").append(run).append(", \"replicate\": ").append(replicate).append(", ");
+		World world = new World(template);
+		world.setSeed(template.deriveSeed(RUN_SEEDS, run));
+		world.setPublishing(false);
+		//The runs are already spread over the cores, so each one only gets a single thread
+		if (world.getParam("updateThreads") <= 0) world.setParam("updateThreads", 1);
+		for (int p = 0; p < values.length; p++) {
+			world.setParam(sweepParams.get(p), values[p]);
+			prefix.append(values[p]).append(',');
+			json.append('"').append(sweepParams.get(p)).append("\": ").append(values[p]).append(", ");
+		}
+		String rowStart = prefix.toString();
+		boolean failed = false;
+		long start = System.nanoTime();
+		try {
+			Simulator simulator = new Simulator(world);
+			int updates = world.getParam("autorun");
+			world.setRunning(true);
+			while (world.getTurn() < updates && world.isRunning()) {
+				world.incrementTurn();
+				simulator.update();
+				int turn = world.getTurn();
+				if (turn % TimeSeries.every == 0) {
+					writeRow(rowStart+turn+","+world.getHerbivoreCount()+","+world.getCarnivoreCount()+
+							 ","+world.getAverageGrassDensity()+","+world.getGeneration());
+				}
+				if (world.getHerbivoreCount() == 0 && world.getCarnivoreCount() == 0) break;
+			}
+			failed = world.isStoppedByError();
+		}
+		catch (RuntimeException re) {
+			EcologiaIO.error("Ensemble run "+run+" failed.", re);
+			failed = true;
+		}
+		if (failed) failures.incrementAndGet();
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.println("{"+json+Ecologia.summarise(world, failed, seconds)+"}");
+	}
+
+	/**
+	 * Add a row to the output file.
+	 */
+	private synchronized void writeRow(String row)
+	{
+		try {
+			writer.write(row);
+			writer.newLine();
+		}
+		catch (IOException ioe) {
+			EcologiaIO.error("Failed to write the ensemble output file "+output+".", ioe);
+			failures.incrementAndGet();
+		}
+	}
+}
@@ -0,0 +1,236 @@
+package main;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import controller.NewsEvent;
+import controller.OccupantType;
+import model.Genome;
+
+/**
+ * The EventLog records births, deaths and the population counts of each
+ * update in a compact binary file, as an alternative to parsing the text
+ * log for analysis. Records are collected in a buffer and written out
+ * through a FileChannel once it is full. Use EventLogReader to read the
+ * file again, or to convert it to CSV.
+ *
+ * File format (all numbers big-endian): the file starts with the magic
+ * number MAGIC and the format VERSION (an int each). After that come the
+ * records, each starting with a byte giving its kind. Every kind of record
+ * has a fixed size:
+ *
+ *  RUN   (13 bytes): kind, run number (int), start time in ms (long)
+ *  BIRTH (38 bytes): kind, occupant type (byte), update, ID, parent ID
+ *                    (int), generation and the eleven genes in the order
+ *                    of the Genome constructor (short, capped at the
+ *                    limits of a short)
+ *  DEATH (15 bytes): kind, occupant type (byte), cause (byte, the ordinal
+ *                    of the NewsEvent or -1 if unknown), update, ID, age (int)
+ *  TICK  (21 bytes): kind, update, herbivore count, carnivore count,
+ *                    average grass density, generation counter (all int)
+ *
+ * A new RUN record is written whenever the simulation is reset, as the
+ * update and ID counters then start from scratch.
+ */
+public abstract class EventLog
+{
+	public static final int MAGIC = 0x45434556; //"ECEV"
+	public static final int VERSION = 2;
+
+	public static final byte RUN = 0;
+	public static final byte BIRTH = 1;
+	public static final byte DEATH = 2;
+	public static final byte TICK = 3;
+
+	public static final int GENES = 11;
+	public static final int RUN_SIZE = 1+4+8;
+	public static final int BIRTH_SIZE = 1+1+4*3+2+GENES*2;
+	public static final int DEATH_SIZE = 1+1+1+4*3;
+	public static final int TICK_SIZE = 1+4*5;
+
+	private static final int BUFFER_SIZE = 65536;
+
+	private static volatile boolean recording = false;
+	private static FileChannel channel;
+	private static ByteBuffer buffer;
+	private static int run;
+	private static boolean shutdownHookAdded = false;
+
+	/**
+	 * Start recording events to the given file (which is overwritten).
+	 */
+	public static synchronized void open(Path file) throws IOException
+	{
+		close();
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+								   StandardOpenOption.TRUNCATE_EXISTING);
+		buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		buffer.putInt(MAGIC);
+		buffer.putInt(VERSION);
+		run = 0;
+		recording = true;
+		newRun();
+		//Make sure the buffer is written out when the program quits
+		if (!shutdownHookAdded) {
+			Runtime.getRuntime().addShutdownHook(new Thread("Ecologia event log shutdown") {
+				public void run() {
+					close();
+				}
+			});
+			shutdownHookAdded = true;
+		}
+	}
+
+	/**
+	 * Is the event log switched on?
+	 */
+	public static boolean isRecording()
+	{
+		return recording;
+	}
+
+	/**
+	 * Mark the start of a new run.
+	 */
+	public static synchronized void newRun()
+	{
+		if (!recording) return;
+		run++;
+		reserve(RUN_SIZE);
+		buffer.put(RUN);
+		buffer.putInt(run);
+		buffer.putLong(System.currentTimeMillis());
+	}
+
+	/**
+	 * Record the birth of an animal.
+	 */
+	public static void birth(int update, OccupantType type, int id, int parent,
+							 int generation, Genome genome)
+	{
+		if (!recording) return;
+		synchronized (EventLog.class) {
+			if (!recording) return;
+			reserve(BIRTH_SIZE);
+			buffer.put(BIRTH);
+			buffer.put((byte) type.toInt());
+			buffer.putInt(update);
+			buffer.putInt(id);
+			buffer.putInt(parent);
+			putShort(generation);
+			putShort(genome.getMutationRate());
+			putShort(genome.getSpeed());
+			putShort(genome.getStamina());
+			putShort(genome.getSight());
+			putShort(genome.getMetabolism());
+			putShort(genome.getAgeLimit());
+			putShort(genome.getStrength());
+			putShort(genome.getReproductiveEnergy());
+			putShort(genome.getMaturityAge());
+			putShort(genome.getGestation());
+			putShort(genome.getReproductionRate());
+		}
+	}
+
+	/**
+	 * Record the death of an animal.
+	 * @param cause What killed it (may be null if unknown)
+	 */
+	public static void death(int update, OccupantType type, int id, int age, NewsEvent cause)
+	{
+		if (!recording) return;
+		synchronized (EventLog.class) {
+			if (!recording) return;
+			reserve(DEATH_SIZE);
+			buffer.put(DEATH);
+			buffer.put((byte) type.toInt());
+			buffer.put(cause == null ? -1 : (byte) cause.ordinal());
+			buffer.putInt(update);
+			buffer.putInt(id);
+			buffer.putInt(age);
+		}
+	}
+
+	/**
+	 * Record the state of the simulation at the end of an update.
+	 */
+	public static void tick(int update, int herbivores, int carnivores, int grassDensity, int generation)
+	{
+		if (!recording) return;
+		synchronized (EventLog.class) {
+			if (!recording) return;
+			reserve(TICK_SIZE);
+			buffer.put(TICK);
+			buffer.putInt(update);
+			buffer.putInt(herbivores);
+			buffer.putInt(carnivores);
+			buffer.putInt(grassDensity);
+			buffer.putInt(generation);
+		}
+	}
+
+	/**
+	 * Write out all buffered records and close the file.
+	 */
+	public static synchronized void close()
+	{
+		if (channel == null) return;
+		recording = false;
+		try {
+			flush();
+			channel.close();
+		}
+		catch (IOException ioe) {
+			EcologiaIO.error("Failed to close the event log.", ioe);
+		}
+		channel = null;
+		buffer = null;
+	}
+
+	/**
+	 * Make sure there is space for a record of the given size in the buffer.
+	 */
+	private static void reserve(int size)
+	{
+		if (buffer.remaining() >= size) return;
+		try {
+			flush();
+		}
+		catch (IOException ioe) {
+			//Give up on the event log rather than on the simulation
+			recording = false;
+			buffer.clear();
+			try {
+				channel.close();
+			}
+			catch (IOException e) {}
+			channel = null;
+			EcologiaIO.error("Failed to write to the event log! Event log turned off.", ioe);
+		}
+	}
+
+	/**
+	 * Put a number into the buffer as a short, capping it if it is too big.
+	 */
+	private static void putShort(int value)
+	{
+		if (value > Short.MAX_VALUE) value = Short.MAX_VALUE;
+		else if (value < Short.MIN_VALUE) value = Short.MIN_VALUE;
+		buffer.putShort((short) value);
+	}
+
+	/**
+	 * Write the buffer to file.
+	 */
+	private static void flush() throws IOException
+	{
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+}
@@ -0,0 +1,285 @@
+package main;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import controller.NewsEvent;
+import controller.OccupantType;
+
+/**
+ * The EventLogReader reads an event log written by EventLog one record at a
+ * time. After next() has returned the kind of a record, its contents are
+ * available through the getters (those that do not belong to the current
+ * kind of record return 0).
+ *
+ * exportCSV() converts a whole event log into CSV files.
+ */
+public class EventLogReader implements Closeable
+{
+	private static final String[] GENE_NAMES = {"mutationRate", "speed", "stamina", "sight",
+												"metabolism", "ageLimit", "strength",
+												"reproductiveEnergy", "maturityAge",
+												"gestation", "reproductionRate"};
+
+	private final FileChannel channel;
+	private final ByteBuffer buffer;
+	private boolean endOfFile;
+
+	//The contents of the current record
+	private byte kind;
+	private int run, update, id, parent, generation, age;
+	private long startTime;
+	private OccupantType type;
+	private NewsEvent cause;
+	private int herbivores, carnivores, grassDensity;
+	private final int[] genes;
+
+	/**
+	 * Open an event log.
+	 * @throws IOException if the file cannot be read or is not an event log
+	 */
+	public EventLogReader(Path file) throws IOException
+	{
+		channel = FileChannel.open(file, StandardOpenOption.READ);
+		buffer = ByteBuffer.allocateDirect(65536);
+		buffer.flip();
+		endOfFile = false;
+		genes = new int[EventLog.GENES];
+		if (!fill(8) || buffer.getInt() != EventLog.MAGIC) {
+			channel.close();
+			throw new IOException(file+" is not an Ecologia event log.");
+		}
+		int version = buffer.getInt();
+		if (version != EventLog.VERSION) {
+			channel.close();
+			throw new IOException("Unsupported event log version: "+version);
+		}
+	}
+
+	/**
+	 * Read the next record.
+	 * @return the kind of the record (see EventLog), or -1 at the end of the file
+	 */
+	public int next() throws IOException
+	{
+		if (!fill(1)) return -1;
+		kind = buffer.get(buffer.position());
+		int size;
+		switch (kind) {
+			case EventLog.RUN: size = EventLog.RUN_SIZE; break;
+			case EventLog.BIRTH: size = EventLog.BIRTH_SIZE; break;
+			case EventLog.DEATH: size = EventLog.DEATH_SIZE; break;
+			case EventLog.TICK: size = EventLog.TICK_SIZE; break;
+			default: throw new IOException("Corrupt event log: unknown record kind "+kind);
+		}
+		if (!fill(size)) throw new IOException("Corrupt event log: incomplete record at the end");
+		buffer.get(); //The kind
+		clearRecord();
+		switch (kind) {
+			case EventLog.RUN:
+				run = buffer.getInt();
+				startTime = buffer.getLong();
+				break;
+			case EventLog.BIRTH:
+				type = OccupantType.fromInt(buffer.get());
+				update = buffer.getInt();
+				id = buffer.getInt();
+				parent = buffer.getInt();
+				generation = buffer.getShort();
+				for (int g = 0; g < genes.length; g++) {
+					genes[g] = buffer.getShort();
+				}
+				break;
+			case EventLog.DEATH:
+				type = OccupantType.fromInt(buffer.get());
+				byte c = buffer.get();
+				cause = (c < 0 || c >= NewsEvent.values().length) ? null : NewsEvent.values()[c];
+				update = buffer.getInt();
+				id = buffer.getInt();
+				age = buffer.getInt();
+				break;
+			case EventLog.TICK:
+				update = buffer.getInt();
+				herbivores = buffer.getInt();
+				carnivores = buffer.getInt();
+				grassDensity = buffer.getInt();
+				generation = buffer.getInt();
+				break;
+		}
+		return kind;
+	}
+
+	/**
+	 * Close the file.
+	 */
+	public void close() throws IOException
+	{
+		channel.close();
+	}
+
+	/**
+	 * Convert an event log into the three files births.csv, deaths.csv and
+	 * updates.csv in the given directory.
+	 */
+	public static void exportCSV(Path file, Path directory) throws IOException
+	{
+		try (EventLogReader reader = new EventLogReader(file);
+			 BufferedWriter births = Files.newBufferedWriter(directory.resolve("births.csv"), StandardCharsets.UTF_8);
+			 BufferedWriter deaths = Files.newBufferedWriter(directory.resolve("deaths.csv"), StandardCharsets.UTF_8);
+			 BufferedWriter updates = Files.newBufferedWriter(directory.resolve("updates.csv"), StandardCharsets.UTF_8)) {
+			births.write("run,update,type,id,parent,generation");
+			for (String gene : GENE_NAMES) births.write(","+gene);
+			births.newLine();
+			deaths.write("run,update,type,id,age,cause");
+			deaths.newLine();
+			updates.write("run,update,herbivores,carnivores,grassDensity,generation");
+			updates.newLine();
+			int currentRun = 0;
+			StringBuilder line = new StringBuilder();
+			int k;
+			while ((k = reader.next()) != -1) {
+				line.setLength(0);
+				if (k == EventLog.RUN) {
+					currentRun = reader.getRun();
+					continue;
+				}
+				line.append(currentRun).append(',').append(reader.getUpdate()).append(',');
+				if (k == EventLog.BIRTH) {
+					line.append(reader.getType()).append(',').append(reader.getID()).append(',');
+					line.append(reader.getParent()).append(',').append(reader.getGeneration());
+					for (int g = 0; g < EventLog.GENES; g++) line.append(',').append(reader.getGene(g));
+					births.write(line.toString());
+					births.newLine();
+				}
+				else if (k == EventLog.DEATH) {
+					line.append(reader.getType()).append(',').append(reader.getID()).append(',');
+					line.append(reader.getAge()).append(',');
+					line.append(reader.getCause() == null ? "unknown" : reader.getCause().name().toLowerCase());
+					deaths.write(line.toString());
+					deaths.newLine();
+				}
+				else {
+					line.append(reader.getHerbivores()).append(',').append(reader.getCarnivores()).append(',');
+					line.append(reader.getGrassDensity()).append(',').append(reader.getGeneration());
+					updates.write(line.toString());
+					updates.newLine();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Make sure at least the given number of bytes is in the buffer.
+	 * @return false if the file ended before that
+	 */
+	private boolean fill(int bytes) throws IOException
+	{
+		if (buffer.remaining() >= bytes) return true;
+		buffer.compact();
+		while (buffer.position() < bytes && !endOfFile) {
+			if (channel.read(buffer) < 0) endOfFile = true;
+		}
+		buffer.flip();
+		return buffer.remaining() >= bytes;
+	}
+
+	/**
+	 * Reset the fields of the current record.
+	 */
+	private void clearRecord()
+	{
+		run = update = id = parent = generation = age = 0;
+		herbivores = carnivores = grassDensity = 0;
+		startTime = 0;
+		type = OccupantType.NONE;
+		cause = null;
+		for (int g = 0; g < genes.length; g++) genes[g] = 0;
+	}
+
+	/*
+	 * The contents of the current record
+	 */
+
+	public int getKind()
+	{
+		return kind;
+	}
+
+	public int getRun()
+	{
+		return run;
+	}
+
+	public long getStartTime()
+	{
+		return startTime;
+	}
+
+	public int getUpdate()
+	{
+		return update;
+	}
+
+	public OccupantType getType()
+	{
+		return type;
+	}
+
+	public int getID()
+	{
+		return id;
+	}
+
+	public int getParent()
+	{
+		return parent;
+	}
+
+	public int getGeneration()
+	{
+		return generation;
+	}
+
+	/**
+	 * Return a gene of the animal born (in the order of the Genome constructor).
+	 */
+	public int getGene(int gene)
+	{
+		return genes[gene];
+	}
+
+	public int getAge()
+	{
+		return age;
+	}
+
+	/**
+	 * Return the cause of death, or null if it is not known.
+	 */
+	public NewsEvent getCause()
+	{
+		return cause;
+	}
+
+	public int getHerbivores()
+	{
+		return herbivores;
+	}
+
+	public int getCarnivores()
+	{
+		return carnivores;
+	}
+
+	public int getGrassDensity()
+	{
+		return grassDensity;
+	}
+}
@@ -0,0 +1,147 @@
+package main;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The LogWriter writes log lines to file in a background thread, so that the
+ * simulation does not have to wait for the disk. Lines are passed on through
+ * a bounded queue and written in batches to a file that stays open, which is
+ * only flushed when the queue has run empty.
+ *
+ * If the queue is full, the caller either waits until there is space again,
+ * or the line is dropped (and the number of dropped lines is noted in the log).
+ */
+class LogWriter implements Runnable
+{
+	private static final int QUEUE_SIZE = 8192;
+	private static final int BATCH_SIZE = 512;
+	//Put on the queue to tell the writer thread to finish (compared by identity)
+	private static final String END = new String("END");
+
+	private final BufferedWriter writer;
+	private final ArrayBlockingQueue<String> queue;
+	private final boolean dropWhenFull;
+	private final AtomicLong dropped; //Lines dropped since this was last noted in the log
+	private final Thread thread;
+	private volatile boolean failed;
+
+	/**
+	 * The constructor opens the file and starts the writer thread.
+	 * @param file The file to append to
+	 * @param dropWhenFull Drop lines if the queue is full? (Otherwise, wait.)
+	 */
+	LogWriter(Path file, boolean dropWhenFull) throws IOException
+	{
+		writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+										 StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+		queue = new ArrayBlockingQueue<String>(QUEUE_SIZE);
+		this.dropWhenFull = dropWhenFull;
+		dropped = new AtomicLong(0);
+		failed = false;
+		thread = new Thread(this, "Ecologia log writer");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Queue a line to be written.
+	 */
+	void write(String line)
+	{
+		if (failed) return;
+		if (dropWhenFull) {
+			if (!queue.offer(line)) dropped.incrementAndGet();
+		}
+		else {
+			try {
+				queue.put(line);
+			}
+			catch (InterruptedException ie) {
+				dropped.incrementAndGet();
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Write out all queued lines and close the file. This waits for the
+	 * writer thread to finish, but not for longer than a few seconds.
+	 */
+	void close()
+	{
+		try {
+			if (!failed) queue.put(END);
+			thread.join(5000);
+		}
+		catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * The writer thread.
+	 */
+	public void run()
+	{
+		ArrayList<String> batch = new ArrayList<String>(BATCH_SIZE);
+		boolean finished = false;
+		try {
+			while (!finished) {
+				batch.add(queue.take());
+				queue.drainTo(batch, BATCH_SIZE-1);
+				for (int i = 0; i < batch.size(); i++) {
+					if (batch.get(i) == END) {
+						finished = true;
+						break;
+					}
+					writer.write(batch.get(i));
+					writer.newLine();
+				}
+				batch.clear();
+				//Only go to disk once there is nothing more to write
+				if (finished || queue.isEmpty()) {
+					long lost = dropped.getAndSet(0);
+					if (lost > 0) {
+						writer.write("WARNING: "+lost+" log messages were dropped (queue full)");
+						writer.newLine();
+					}
+					writer.flush();
+				}
+			}
+		}
+		catch (IOException ioe) {
+			fail(ioe);
+		}
+		catch (InterruptedException ie) {
+			//Shutting down, just close the file
+		}
+		finally {
+			try {
+				writer.close();
+			}
+			catch (IOException ioe) {
+				if (!failed) fail(ioe);
+			}
+		}
+	}
+
+	/**
+	 * Writing has failed: turn off logging and make sure nobody waits for us.
+	 */
+	private void fail(IOException ioe)
+	{
+		failed = true;
+		queue.clear();
+		EcologiaIO.logging = false;
+		System.out.println("ERROR: Failed to write to logfile! Logging turned off.");
+		ioe.printStackTrace();
+	}
+}
@@ -0,0 +1,102 @@
+package main;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * The TimeSeries writes the population counts of each update to a CSV file,
+ * one row per update, so that the population dynamics of a run can be
+ * charted directly (instead of extracting them from the log with
+ * population.py). For long runs, only every n-th update can be written.
+ *
+ * The columns are: Run, Updates, Herbivores, Carnivores, GrassDensity,
+ * Generations. The run number goes up by one whenever the simulation is reset.
+ */
+public abstract class TimeSeries
+{
+	public static int every = 1; //Only write every n-th update
+	public static int flushEvery = 100; //Go to disk every n rows (0: only when the buffer is full)
+
+	private static BufferedWriter writer;
+	private static int run;
+	private static int rowsSinceFlush;
+	private static boolean shutdownHookAdded = false;
+
+	/**
+	 * Start writing the time series to the given file (which is overwritten).
+	 */
+	public static synchronized void open(Path file) throws IOException
+	{
+		close();
+		writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+		writer.write("Run,Updates,Herbivores,Carnivores,GrassDensity,Generations");
+		writer.newLine();
+		run = 1;
+		rowsSinceFlush = 0;
+		//Make sure the file is complete when the program quits
+		if (!shutdownHookAdded) {
+			Runtime.getRuntime().addShutdownHook(new Thread("Ecologia time series shutdown") {
+				public void run() {
+					close();
+				}
+			});
+			shutdownHookAdded = true;
+		}
+	}
+
+	/**
+	 * Is the time series switched on?
+	 */
+	public static synchronized boolean isRecording()
+	{
+		return writer != null;
+	}
+
+	/**
+	 * Mark the start of a new run.
+	 */
+	public static synchronized void newRun()
+	{
+		run++;
+	}
+
+	/**
+	 * Add the state at the end of an update (if this update is wanted).
+	 */
+	public static synchronized void record(int update, int herbivores, int carnivores,
+										   int grassDensity, int generation)
+	{
+		if (writer == null || update % every != 0) return;
+		try {
+			writer.write(run+","+update+","+herbivores+","+carnivores+","+grassDensity+","+generation);
+			writer.newLine();
+			rowsSinceFlush++;
+			if (flushEvery > 0 && rowsSinceFlush >= flushEvery) {
+				writer.flush();
+				rowsSinceFlush = 0;
+			}
+		}
+		catch (IOException ioe) {
+			EcologiaIO.error("Failed to write the time series! Time series turned off.", ioe);
+			close();
+		}
+	}
+
+	/**
+	 * Write out all buffered rows and close the file.
+	 */
+	public static synchronized void close()
+	{
+		if (writer == null) return;
+		try {
+			writer.close();
+		}
+		catch (IOException ioe) {
+			EcologiaIO.error("Failed to close the time series file.", ioe);
+		}
+		writer = null;
+	}
+}
@@ -1,12 +1,13 @@
 package model;
 
 import java.util.HashMap;
-import java.util.Random;
+import java.util.SplittableRandom;
 import java.util.ArrayList;
 
 import main.EcologiaIO;
+import controller.NewsEvent;
 import controller.OccupantType;
-import controller.World;
+import controller.Snapshot;
 
 /**
  * This is the superclass of all animal classes. It holds common methods
@@ -25,6 +26,7 @@ public abstract class Animal
 	 * => long IDs are not very urgent...
 	 * --> CHECK THIS AGAIN
 	 */
+	protected Simulator simulator; //The simulation that this animal lives in
 	protected int IDnumber; //A unique identifier for this animal
 	protected int parent; //The ID number of the parent
 	protected Genome genome;
@@ -40,10 +42,12 @@ public abstract class Animal
 	protected int exhaustion;
 	protected int gestationPeriod;
 	protected boolean isAlive;
-	protected Random random;
+	protected SplittableRandom random; //This animal's own random number stream
+	protected Intent intent; //What this animal plans to do (intent updates only)
 	
 	/**
 	 * The constructor.
+	 * @param simulator
 	 * @param setID
 	 * @param myType
 	 * @param newGenome
@@ -53,10 +57,11 @@ public abstract class Animal
 	 * @param setEnergy
 	 * @param parentID
 	 */
-	public Animal(int setID, OccupantType myType, Genome newGenome,
+	public Animal(Simulator simulator, int setID, OccupantType myType, Genome newGenome,
 				  int myGeneration, int setX, int setY, int setEnergy,
 				  int parentID)
 	{
+		this.simulator = simulator;
 		IDnumber = setID;
 		genome = newGenome;
 		generation = myGeneration;
@@ -71,20 +76,38 @@ public abstract class Animal
 		exhaustion = 0;
 		gestationPeriod = genome.getGestation();
 		isAlive = true;
-		random = new Random();
-		Simulator.getField(x, y).setOccupant(type);
-		EcologiaIO.analysis("Created "+type.toString()+" with ID="+IDnumber+
-							" parent="+parent+" generation="+generation+
-							" update="+World.getInstance().getTurn());
-		String genStr = genome.asHashMap().toString();
-		EcologiaIO.analysis("Genome of animal "+IDnumber+": "+
-							genStr.substring(1, genStr.length()-1));
+		random = simulator.newAnimalStream(setID);
+		simulator.getLandscape().setOccupant(x, y, type);
+	}
+	
+	/**
+	 * Give a newborn its final ID number, and with it its random number
+	 * stream. (Only used by Simulator after a parallel update.)
+	 */
+	void setID(int id)
+	{
+		IDnumber = id;
+		random = simulator.newAnimalStream(id);
 	}
 	
 	/*
 	 * --- Generic methods needed by all animals ---
 	 */
 	
+	/**
+	 * Plan this turn in an intent update: the animal goes through its update
+	 * as usual, but leaves the map and all other animals alone, noting down
+	 * its moves, grazing, attacks, births and death in its intent instead.
+	 * (Only to be called by Simulator while it is planning.)
+	 * @param priority The animal's place in the commit order
+	 */
+	void plan(long priority)
+	{
+		if (intent == null) intent = new Intent();
+		intent.reset(x, y, priority);
+		update();
+	}
+	
 	/**
 	 * This method has to be called by every species.
 	 */
@@ -96,9 +119,7 @@ public abstract class Animal
 		if (exhaustion > 0) exhaustion--;
 		if (gestationPeriod > 0) gestationPeriod--;
 		if (age >= genome.getAgeLimit()) {
-			isAlive = false;
-			World.getInstance().giveNews("A "+type.toString()+" has died!");
-			Simulator.removeAnimal(x, y, type);
+			die(NewsEvent.OLD_AGE);
 			return;
 		}
 		changeEnergy(-1);
@@ -117,32 +138,42 @@ public abstract class Animal
 	{
 		int r = genome.getReproductionRate();
 		for (int i = 0; i < r; i++) {
-			int[] childField = getNeighbouringField(Direction.randomDirection());
+			int[] childField = getNeighbouringField(Direction.randomDirection(random));
 			int ttl = 10; //Make sure we don't end up in an endless loop
-			while (childField == null || World.getInstance().getFieldInfo(childField[0], childField[1]).get("Occupant") != OccupantType.NONE.toInt()) {
+			while (childField == null || simulator.getLandscape().getOccupant(childField[0], childField[1]) != OccupantType.NONE
+				   || (simulator.isPlanning() && intent.hasChildAt(childField[0], childField[1]))) {
 				if (ttl == 0) return; //If we still haven't found a space, break off
-				childField = getNeighbouringField(Direction.randomDirection());
+				childField = getNeighbouringField(Direction.randomDirection(random));
 				ttl--;
 			}
 			int childEnergy = energy/(r+1);
-			if (type == OccupantType.HERBIVORE) {
-				Herbivore child = new Herbivore(World.getInstance().getNextID(), 
-												new Genome(genome), generation+1, childField[0], 
-												childField[1], childEnergy, IDnumber);
-				Simulator.addAnimal(child);
-			}
-			else if (type == OccupantType.CARNIVORE) {
-				Carnivore child = new Carnivore(World.getInstance().getNextID(), 
-												new Genome(genome), generation+1, childField[0], 
-												childField[1], childEnergy, IDnumber);
-				Simulator.addAnimal(child);
-			}
-			offspring++;
+			Genome childGenome = new Genome(genome, random);
+			if (simulator.isPlanning()) intent.addChild(childField[0], childField[1], childEnergy, childGenome);
+			else giveBirth(childField[0], childField[1], childEnergy, childGenome);
 		}
 		changeEnergy(-energy/(r+1));
 		gestationPeriod = genome.getGestation();
-		World.getInstance().incGeneration(generation+1);
-		World.getInstance().giveNews("A new "+type.toString()+" has been born!"); //XXX Comment this out?
+		//(When planning, this is done as each child is actually born)
+		if (!simulator.isPlanning()) simulator.getWorld().incGeneration(generation+1);
+	}
+	
+	/**
+	 * Set down a child on the given field.
+	 */
+	void giveBirth(int childX, int childY, int childEnergy, Genome childGenome)
+	{
+		if (type == OccupantType.HERBIVORE) {
+			Herbivore child = new Herbivore(simulator, simulator.nextID(), childGenome,
+											generation+1, childX, childY, childEnergy, IDnumber);
+			simulator.addAnimal(child);
+		}
+		else if (type == OccupantType.CARNIVORE) {
+			Carnivore child = new Carnivore(simulator, simulator.nextID(), childGenome,
+											generation+1, childX, childY, childEnergy, IDnumber);
+			simulator.addAnimal(child);
+		}
+		offspring++;
+		simulator.getWorld().reportEvent(NewsEvent.BIRTH, type);
 	}
 	
 	/**
@@ -169,15 +200,20 @@ public abstract class Animal
 		int[] nextPos = getNeighbouringField(dir);
 		//Check if the square to move to is valid
 		if (nextPos == null || movesThisTurn >= genome.getSpeed() || exhaustion > genome.getStamina() ||
-				OccupantType.fromInt(World.getInstance().getFieldInfo(nextPos[0], nextPos[1]).get("Occupant")) != OccupantType.NONE) {
+				simulator.getLandscape().getOccupant(nextPos[0], nextPos[1]) != OccupantType.NONE ||
+				(simulator.isPlanning() && intent.hasChildAt(nextPos[0], nextPos[1]))) {
 			success = false;
 			attemptedMovesThisTurn++;
 		}
 		
-		//Execute the move
+		//Execute the move (when planning, only the destination counts, and that is
+		//claimed in the commit phase)
 		if (success) {
-			Simulator.getField(x, y).setOccupant(OccupantType.NONE);
-			Simulator.getField(nextPos[0], nextPos[1]).setOccupant(type);
+			if (!simulator.isPlanning()) {
+				simulator.getLandscape().setOccupant(x, y, OccupantType.NONE);
+				simulator.getLandscape().setOccupant(nextPos[0], nextPos[1], type);
+				simulator.moveAnimal(x, y, nextPos[0], nextPos[1]);
+			}
 			x = nextPos[0];
 			y = nextPos[1];
 			movesThisTurn++;
@@ -203,12 +239,14 @@ public abstract class Animal
 	 */
 	public int[] randomizedSearch(OccupantType type)
 	{
+		int xsize = simulator.getParams().xsize;
+		int ysize = simulator.getParams().ysize;
+		Landscape map = simulator.getLandscape();
 		ArrayList<int[]> targets = new ArrayList<int[]>();
 		for (int xdist = x-genome.getSight(); xdist < x+genome.getSight(); xdist++) {
 			for (int ydist = y-genome.getSight(); ydist < y+genome.getSight(); ydist++) {
-				if (xdist >= 0 && ydist >= 0 && xdist < World.getInstance().getParam("xsize")
-					&& ydist < World.getInstance().getParam("ysize")) {
-					if (Simulator.getField(xdist, ydist).getOccupant() == type) {
+				if (xdist >= 0 && ydist >= 0 && xdist < xsize && ydist < ysize) {
+					if (map.getOccupant(xdist, ydist) == type) {
 						int[] newTarget = {xdist, ydist};
 						targets.add(newTarget);
 					}
@@ -225,13 +263,15 @@ public abstract class Animal
 	 */
 	public int[] closestSearch(OccupantType type)
 	{
+		int xsize = simulator.getParams().xsize;
+		int ysize = simulator.getParams().ysize;
+		Landscape map = simulator.getLandscape();
 		int[] target = {-1, -1};
 		int minDist = genome.getSight()+1;
 		for (int xdist = x-genome.getSight(); xdist < x+genome.getSight(); xdist++) {
 			for (int ydist = y-genome.getSight(); ydist < y+genome.getSight(); ydist++) {
-				if (xdist >= 0 && ydist >= 0 && xdist < World.getInstance().getParam("xsize")
-					&& ydist < World.getInstance().getParam("ysize")) {
-					if (Simulator.getField(xdist, ydist).getOccupant() == type) {
+				if (xdist >= 0 && ydist >= 0 && xdist < xsize && ydist < ysize) {
+					if (map.getOccupant(xdist, ydist) == type) {
 						int distance = getDistance(xdist, ydist);
 						if (distance != 0 && distance < minDist) {
 							target[0] = xdist;
@@ -252,13 +292,15 @@ public abstract class Animal
 	 */
 	public int[] mixedSearch(OccupantType type)
 	{
+		int xsize = simulator.getParams().xsize;
+		int ysize = simulator.getParams().ysize;
+		Landscape map = simulator.getLandscape();
 		ArrayList<int[]> targets = new ArrayList<int[]>();
 		int minDist = genome.getSight()+1;
 		for (int xdist = x-genome.getSight(); xdist < x+genome.getSight(); xdist++) {
 			for (int ydist = y-genome.getSight(); ydist < y+genome.getSight(); ydist++) {
-				if (xdist >= 0 && ydist >= 0 && xdist < World.getInstance().getParam("xsize")
-					&& ydist < World.getInstance().getParam("ysize")) {
-					if (Simulator.getField(xdist, ydist).getOccupant() == type) {
+				if (xdist >= 0 && ydist >= 0 && xdist < xsize && ydist < ysize) {
+					if (map.getOccupant(xdist, ydist) == type) {
 						int distance = getDistance(xdist, ydist);
 						int[] newTarget = {xdist, ydist};
 						if (distance < minDist) {
@@ -293,8 +335,8 @@ public abstract class Animal
 			case TOP_LEFT: nextY--; nextX--; break;
 			default: EcologiaIO.error("Invalid direction passed to Animal.getNeighbouringField()! ("+dir+") by "+type.toString()+" @"+x+"/"+y); 
 		}
-		if (nextX < 0 || nextX >= World.getInstance().getParam("xsize") || 
-			nextY < 0 || nextY >= World.getInstance().getParam("ysize")) {
+		if (nextX < 0 || nextX >= simulator.getParams().xsize || 
+			nextY < 0 || nextY >= simulator.getParams().ysize) {
 			return null;
 		}
 		else {
@@ -371,6 +413,35 @@ public abstract class Animal
 		return info;
 	}
 	
+	/**
+	 * Write all the information about this animal into a new slot of the
+	 * snapshot (the same values as getInfo(), but without creating any objects).
+	 */
+	public void writeInfo(Snapshot snapshot)
+	{
+		int slot = snapshot.addAnimal();
+		snapshot.set(slot, Snapshot.ID, IDnumber);
+		snapshot.set(slot, Snapshot.TYPE, type.toInt());
+		snapshot.set(slot, Snapshot.X, x);
+		snapshot.set(slot, Snapshot.Y, y);
+		snapshot.set(slot, Snapshot.AGE, age);
+		snapshot.set(slot, Snapshot.ENERGY, energy);
+		snapshot.set(slot, Snapshot.GENERATION, generation);
+		snapshot.set(slot, Snapshot.PARENT, parent);
+		snapshot.set(slot, Snapshot.OFFSPRING, offspring);
+		snapshot.set(slot, Snapshot.MUTATION_RATE, genome.getMutationRate());
+		snapshot.set(slot, Snapshot.SPEED, genome.getSpeed());
+		snapshot.set(slot, Snapshot.STAMINA, genome.getStamina());
+		snapshot.set(slot, Snapshot.SIGHT, genome.getSight());
+		snapshot.set(slot, Snapshot.METABOLISM, genome.getMetabolism());
+		snapshot.set(slot, Snapshot.AGE_LIMIT, genome.getAgeLimit());
+		snapshot.set(slot, Snapshot.STRENGTH, genome.getStrength());
+		snapshot.set(slot, Snapshot.REPRODUCTIVE_ENERGY, genome.getReproductiveEnergy());
+		snapshot.set(slot, Snapshot.MATURITY_AGE, genome.getMaturityAge());
+		snapshot.set(slot, Snapshot.GESTATION, genome.getGestation());
+		snapshot.set(slot, Snapshot.REPRODUCTION_RATE, genome.getReproductionRate());
+	}
+
 	//XXX Deprecate other getters? [getInfo() available]
 	
 	public boolean isAlive()
@@ -446,11 +517,19 @@ public abstract class Animal
 	public void setEnergy(int newEnergy)
 	{
 		energy = newEnergy;
-		if (energy <= 0) {
-			isAlive = false;
-			World.getInstance().giveNews("A "+type.toString()+" has starved!");
-			Simulator.removeAnimal(x, y, type);
-		}
+		if (energy <= 0) die(NewsEvent.STARVATION);
+	}
+	
+	/**
+	 * The animal dies. (When planning, it is only taken off the map in the
+	 * commit phase.)
+	 */
+	protected void die(NewsEvent cause)
+	{
+		isAlive = false;
+		simulator.getWorld().reportEvent(cause, type);
+		if (simulator.isPlanning()) intent.death = cause;
+		else simulator.removeAnimal(x, y, type, cause);
 	}
 	
 	public void setAge(int newAge)
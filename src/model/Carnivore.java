@@ -1,8 +1,8 @@
 package model;
 
 import main.EcologiaIO;
+import controller.NewsEvent;
 import controller.OccupantType;
-import controller.World;
 
 /**
  * This class simulates a carnivore.
@@ -12,16 +12,14 @@ import controller.World;
  */
 public class Carnivore extends Animal 
 {
-	public static int fights_won = 1;
-	public static int total_fights = 1; //Start at 1 to avoid division by zero errors
-
 	private int[] preyPosition;
 	private Direction currentDirection;
 	
-	public static Genome defaultGenome = new Genome(0, 3, 10, 4, 18, 200, 11, 200, 30, 10, 1);
+	public static final Genome DEFAULT_GENOME = new Genome(0, 3, 10, 4, 18, 200, 11, 200, 30, 10, 1);
 	
 	/**
 	 * The constructor.
+	 * @param simulator
 	 * @param setID
 	 * @param newGenome
 	 * @param myGeneration
@@ -30,13 +28,23 @@ public class Carnivore extends Animal
 	 * @param setEnergy
 	 * @param parentID
 	 */
-	public Carnivore(int setID, Genome newGenome, int myGeneration, int setX,
+	public Carnivore(Simulator simulator, int setID, Genome newGenome, int myGeneration, int setX,
 					 int setY, int setEnergy, int parentID) 
 	{
-		super(setID, OccupantType.CARNIVORE, newGenome, myGeneration, setX,
+		super(simulator, setID, OccupantType.CARNIVORE, newGenome, myGeneration, setX,
 			  setY, setEnergy, parentID);
 		preyPosition = new int[2];
-		currentDirection = Direction.randomDirection();
+		currentDirection = Direction.randomDirection(random);
+	}
+	
+	/**
+	 * Choose the starting direction again with the new random number stream.
+	 */
+	@Override
+	void setID(int id)
+	{
+		super.setID(id);
+		currentDirection = Direction.randomDirection(random);
 	}
 	
 	/**
@@ -53,7 +61,7 @@ public class Carnivore extends Animal
 		else {
 			while (movesThisTurn < genome.getSpeed()) {
 				boolean moved = super.move(currentDirection);
-				if (!moved) currentDirection = Direction.randomDirection();
+				if (!moved) currentDirection = Direction.randomDirection(random);
 			}
 		}
 	}
@@ -63,7 +71,7 @@ public class Carnivore extends Animal
 	 */
 	private void hunt()
 	{
-		EcologiaIO.debug("Carnivore @"+x+"/"+y+" is hunting!");
+		EcologiaIO.debug(() -> "Carnivore @"+x+"/"+y+" is hunting!");
 		currentDirection = super.getDirection(preyPosition[0], preyPosition[1]);
 		while (movesThisTurn < genome.getSpeed()) {
 			boolean success = super.move(currentDirection);
@@ -81,25 +89,49 @@ public class Carnivore extends Animal
 	 */
 	private void attack()
 	{
-		EcologiaIO.debug("Carnivore @"+x+"/"+y+" is attacking a prey!");
-		Herbivore prey = Simulator.getHerbivore(preyPosition[0], preyPosition[1]);//(x, y);
+		EcologiaIO.debug(() -> "Carnivore @"+x+"/"+y+" is attacking a prey!");
+		Herbivore prey = simulator.getHerbivore(preyPosition[0], preyPosition[1]);//(x, y);
 		if (prey == null) {
 			EcologiaIO.error("Carnivore at "+x+"/"+y+" is attacking a non-existent prey!");
 			return;
 		}
-		total_fights++;
+		//When planning, the fight only takes place in the commit phase
+		if (simulator.isPlanning()) intent.prey = prey;
+		else fight(prey);
+		movesThisTurn = genome.getSpeed(); //an attack ends the carnivore's turn
+	}
+	
+	/**
+	 * Fight the prey chosen while planning, if it is still alive and next to
+	 * this carnivore. (Only used in the commit phase of intent updates.)
+	 */
+	void commitAttack()
+	{
+		Herbivore prey = intent.prey;
+		if (!isAlive || prey == null || !prey.isAlive() || getDistance(prey.getX(), prey.getY()) != 1) return;
+		movesThisTurn = genome.getSpeed()-1; //Leave one step for moving onto the prey's field
+		fight(prey);
+		movesThisTurn = genome.getSpeed();
+	}
+	
+	/**
+	 * Fight a neighbouring herbivore, and move onto its field if it is killed.
+	 */
+	private void fight(Herbivore prey)
+	{
+		int preyX = prey.getX();
+		int preyY = prey.getY();
 		//Choose a fight algorithm from the methods below - currently strengthFight is used
 		if (strengthFight(genome.getStrength(), prey.getGenome().getStrength())) {
 			//Predators get (50+(metabolism*4))% of their preys energy
 			changeEnergy((int) ((prey.getEnergy()/2)+prey.getEnergy()*(genome.getMetabolism()*0.04)));
-			World.getInstance().giveNews("A Herbivore has been killed!");
-			Simulator.removeAnimal(preyPosition[0], preyPosition[1], OccupantType.HERBIVORE);
-			/* It would be more efficient to use currentDirection, but I'm not
-			 * sure whether it's guaranteed to be accurate */
-			super.move(getDirection(preyPosition[0], preyPosition[1]));
-			fights_won++;
+			simulator.getWorld().reportEvent(NewsEvent.KILLED, OccupantType.HERBIVORE);
+			simulator.removeAnimal(preyX, preyY, OccupantType.HERBIVORE, NewsEvent.KILLED);
+			super.move(getDirection(preyX, preyY));
+			simulator.countHunt(true);
 		}
 		else {
+			simulator.countHunt(false);
 			EcologiaIO.debug("A Herbivore has won a fight.");
 			//Reduce each combatants energy by their strength in the fight
 			//XXX Change this back again?
@@ -108,7 +140,6 @@ public class Carnivore extends Animal
 			exhaust(2);
 			prey.exhaust(2);
 		}
-		movesThisTurn = genome.getSpeed(); //an attack ends the carnivore's turn
 	}
 
 	//The following methods are various fighting algorithms
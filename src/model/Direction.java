@@ -1,6 +1,6 @@
 package model;
 
-import java.util.Random;
+import java.util.SplittableRandom;
 
 
 /**
@@ -69,11 +69,11 @@ public enum Direction
 	
 	/**
 	 * Return a random direction
+	 * @param random The random number stream to draw from
 	 */
-	public static Direction randomDirection()
+	public static Direction randomDirection(SplittableRandom random)
 	{
-		Random r = new Random();
-		return fromInt(r.nextInt(8));
+		return fromInt(random.nextInt(8));
 	}
 	
 	/**
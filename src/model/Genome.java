@@ -1,7 +1,7 @@
 package model;
 
 import java.util.HashMap;
-import java.util.Random;
+import java.util.SplittableRandom;
 
 import main.EcologiaIO;
 import controller.OccupantType;
@@ -32,8 +32,6 @@ public class Genome
 	
 	private static Genome herbivoreGenome, carnivoreGenome;
 	
-	private Random random;
-	
 	/**
 	 * The default constructor provides a standard genome.
 	 */
@@ -55,27 +53,27 @@ public class Genome
 	/**
 	 * This constructor creates a new genome based on the parent genome passed 
 	 * to it, mutating it at random.
+	 * @param random The random number stream to draw the mutations from
 	 */
-	public Genome(Genome parentGenome)
+	public Genome(Genome parentGenome, SplittableRandom random)
 	{
-		random = new Random();
 		/* Before we can mutate the mutation rate, we need to know a 
 		 * preliminary mutation rate or we get a NullPointerException
 		 */
 		mutationRate = DEFAULT_MUTATION_RATE;
 		// Mutate the parent's genes to get this genome
 		// XXX Warning: magic numbers!
-		mutationRate = parentGenome.getMutationRate()+mutation(1);
-		speed = parentGenome.getSpeed()+mutation(1);
-		stamina = parentGenome.getStamina()+mutation(1);
-		sight = parentGenome.getSight()+mutation(1);
-		metabolism = parentGenome.getMetabolism()+mutation(1);
-		ageLimit = parentGenome.getAgeLimit()+mutation(10);
-		strength = parentGenome.getStrength()+mutation(1);
-		reproductiveEnergy = parentGenome.getReproductiveEnergy()+mutation(10);
-		maturityAge = parentGenome.getMaturityAge()+mutation(1);
-		gestation = parentGenome.getGestation()+mutation(1);
-		reproductionRate = parentGenome.getReproductionRate()+mutation(1);
+		mutationRate = parentGenome.getMutationRate()+mutation(1, random);
+		speed = parentGenome.getSpeed()+mutation(1, random);
+		stamina = parentGenome.getStamina()+mutation(1, random);
+		sight = parentGenome.getSight()+mutation(1, random);
+		metabolism = parentGenome.getMetabolism()+mutation(1, random);
+		ageLimit = parentGenome.getAgeLimit()+mutation(10, random);
+		strength = parentGenome.getStrength()+mutation(1, random);
+		reproductiveEnergy = parentGenome.getReproductiveEnergy()+mutation(10, random);
+		maturityAge = parentGenome.getMaturityAge()+mutation(1, random);
+		gestation = parentGenome.getGestation()+mutation(1, random);
+		reproductionRate = parentGenome.getReproductionRate()+mutation(1, random);
 		checkGenome();
 	}
 	
@@ -122,9 +120,10 @@ public class Genome
 	/**
 	 * Returns a mutation factor depending on the specified mutation rate.
 	 * @param coefficient Influences the size of the returned factor.
+	 * @param random The random number stream to use
 	 * @return factor The wanted mutation factor.
 	 */
-	private int mutation(int coefficient)
+	private int mutation(int coefficient, SplittableRandom random)
 	{
 		int factor = 0;
 		if (random.nextInt(100) < mutationRate) { //Does a mutation take place?
@@ -2,7 +2,6 @@ package model;
 
 import main.EcologiaIO;
 import controller.OccupantType;
-import controller.World;
 
 import java.util.ArrayList;
 
@@ -16,10 +15,11 @@ public class Herbivore extends Animal
 {	
 	private int[] predatorPosition;
 	
-	public static Genome defaultGenome = new Genome(0, 2, 10, 4, 10, 150, 10, 120, 15, 10, 2);
+	public static final Genome DEFAULT_GENOME = new Genome(0, 2, 10, 4, 10, 150, 10, 120, 15, 10, 2);
 	
 	/**
 	 * The constructor.
+	 * @param simulator
 	 * @param setID
 	 * @param newGenome
 	 * @param myGeneration
@@ -28,10 +28,10 @@ public class Herbivore extends Animal
 	 * @param setEnergy
 	 * @param parentID
 	 */
-	public Herbivore(int setID, Genome newGenome, int myGeneration, int setX,
+	public Herbivore(Simulator simulator, int setID, Genome newGenome, int myGeneration, int setX,
 					 int setY, int setEnergy, int parentID) 
 	{
-		super(setID, OccupantType.HERBIVORE, newGenome, myGeneration, setX,
+		super(simulator, setID, OccupantType.HERBIVORE, newGenome, myGeneration, setX,
 			  setY, setEnergy, parentID);
 		predatorPosition = new int[2];
 	}
@@ -46,7 +46,7 @@ public class Herbivore extends Animal
 		if (!isAlive) return; //Don't do anything more if the animal is dead
 		predatorPosition = search(OccupantType.CARNIVORE);
 		if (predatorPosition != null) flee();
-		else if (Simulator.getField(x, y).getGrassDensity() < 20
+		else if (simulator.getLandscape().getGrassDensity(x, y) < 20
 				 && exhaustion < genome.getStamina() - genome.getSpeed()) {
 			moveToNewGrazingGrounds();
 			feed();
@@ -62,28 +62,49 @@ public class Herbivore extends Animal
 	private void feed()
 	{
 		if (movesThisTurn < genome.getSpeed() && exhaustion < genome.getStamina()
-				&& Simulator.getField(x, y).getGrassDensity() > 0) {
+				&& simulator.getLandscape().getGrassDensity(x, y) > 0) {
 			movesThisTurn++;
 			int feedEnergy = genome.getMetabolism()/3;
-			changeEnergy(feedEnergy);
-			Simulator.getField(x, y).reduceGrassDensity(feedEnergy*2);
+			//(When planning, the grass is only eaten in the commit phase)
+			if (simulator.isPlanning()) intent.grazing = feedEnergy*2;
+			else {
+				changeEnergy(feedEnergy);
+				simulator.getLandscape().reduceGrassDensity(x, y, feedEnergy*2);
+			}
 		}
 	}
 	
+	/**
+	 * Graze as planned, on the field where the herbivore has ended up. The
+	 * energy gained depends on how much grass is actually there.
+	 * (Only used in the commit phase of intent updates.)
+	 */
+	void commitGrazing()
+	{
+		Landscape map = simulator.getLandscape();
+		int eaten = Math.min(intent.grazing, map.getGrassDensity(x, y));
+		if (eaten == 0) return;
+		map.reduceGrassDensity(x, y, eaten);
+		changeEnergy((eaten+1)/2);
+	}
+	
 	/**
 	 * Search the surrounding squares for one with a higher grass density and move there
 	 */
 	private void moveToNewGrazingGrounds()
 	{
-		int currentGrassDensity = Simulator.getField(x, y).getGrassDensity();
-		Direction dir = Direction.randomDirection();
+		int currentGrassDensity = simulator.getLandscape().getGrassDensity(x, y);
+		Direction dir = Direction.randomDirection(random);
 		ArrayList<Direction> possibleDirs = new ArrayList<Direction>();
+		int xsize = simulator.getParams().xsize;
+		int ysize = simulator.getParams().ysize;
+		Landscape map = simulator.getLandscape();
 		// Search within range of sight
 		for (int xdist = x-genome.getSight(); xdist < x+genome.getSight(); xdist++) {
 			for (int ydist = y-genome.getSight(); ydist < y+genome.getSight(); ydist++) {
 				if (!(xdist == x && ydist == y) && xdist >= 0 && ydist >= 0 && 
-					xdist < World.getInstance().getParam("xsize") && ydist < World.getInstance().getParam("ysize") &&
-						Simulator.getField(xdist, ydist).getGrassDensity() > currentGrassDensity) {
+					xdist < xsize && ydist < ysize &&
+						map.getGrassDensity(xdist, ydist) > currentGrassDensity) {
 					Direction d = super.getDirection(xdist, ydist);
 					if (!possibleDirs.contains(d)) possibleDirs.add(d);
 				}
@@ -101,7 +122,7 @@ public class Herbivore extends Animal
 		// If nothing is found, move randomly
 		while (movesThisTurn < genome.getSpeed()) {
 			boolean moved = super.move(dir);
-			if (!moved) dir = Direction.randomDirection();
+			if (!moved) dir = Direction.randomDirection(random);
 		}
 	}
 	
@@ -113,11 +134,11 @@ public class Herbivore extends Animal
 		Direction predDir = super.getDirection(predatorPosition[0], predatorPosition[1]);
 		if (predDir == Direction.CENTER) //Should never happen
 			EcologiaIO.error("Herbivore @ "+x+"/"+y+" is fleeing in direction CENTER from carnivore @"+predatorPosition[0]+"/"+predatorPosition[1]+"!",
-							 EcologiaIO.BREAK_ERROR);
+							 simulator.getWorld(), EcologiaIO.BREAK_ERROR);
 		Direction flightDir = predDir.oppositeDirection();
 		while (movesThisTurn < genome.getSpeed()) {
 			boolean success = super.move(flightDir);
-			if (!success) flightDir = Direction.randomDirection();
+			if (!success) flightDir = Direction.randomDirection(random);
 		}
 	}
 
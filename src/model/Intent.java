@@ -0,0 +1,69 @@
+package model;
+
+import java.util.ArrayList;
+
+import controller.NewsEvent;
+
+/**
+ * An Intent holds what an animal has decided to do in an intent update (see
+ * Simulator.updateByIntents()): where it wants to go, how much it wants to
+ * graze, which herbivore it wants to attack and where it wants to set down
+ * its children. It is filled in while the animal plans its turn against the
+ * unchanged state of the last update, and carried out by the Simulator
+ * in the commit phase.
+ */
+class Intent
+{
+	long priority; //The animal's place in the commit order (lowest first)
+	int fromX, fromY; //Where the animal started its turn
+	NewsEvent death; //Why the animal died while planning (null if it is still alive)
+	int grazing; //How much grass to eat where the animal ends up (at most)
+	Herbivore prey; //The herbivore to attack at the end of the turn (or null)
+	final ArrayList<int[]> children; //The field and energy of each child: {x, y, energy}
+	final ArrayList<Genome> childGenomes;
+
+	/**
+	 * The constructor.
+	 */
+	Intent()
+	{
+		children = new ArrayList<int[]>();
+		childGenomes = new ArrayList<Genome>();
+	}
+
+	/**
+	 * Forget the last turn's intent before planning a new one.
+	 */
+	void reset(int x, int y, long newPriority)
+	{
+		priority = newPriority;
+		fromX = x;
+		fromY = y;
+		death = null;
+		grazing = 0;
+		prey = null;
+		children.clear();
+		childGenomes.clear();
+	}
+
+	/**
+	 * Plan to set down a child.
+	 */
+	void addChild(int x, int y, int energy, Genome genome)
+	{
+		int[] child = {x, y, energy};
+		children.add(child);
+		childGenomes.add(genome);
+	}
+
+	/**
+	 * Has a child already been planned for this field?
+	 */
+	boolean hasChildAt(int x, int y)
+	{
+		for (int c = 0; c < children.size(); c++) {
+			if (children.get(c)[0] == x && children.get(c)[1] == y) return true;
+		}
+		return false;
+	}
+}
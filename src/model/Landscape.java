@@ -0,0 +1,521 @@
+package model;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import controller.Humidity;
+import controller.OccupantType;
+
+/**
+ * The Landscape holds the state of every tile on the map. Instead of one
+ * object per tile, all values are kept in flat primitive arrays (one entry
+ * per tile, stored row by row), which keeps large maps small and makes
+ * passes over the whole map cache-friendly. MapField provides an object
+ * view of single tiles on top of this.
+ *
+ * In lazy grass mode, the grass is not regrown tile by tile every turn.
+ * As the regrowth is a clamped linear function of the (constant) local
+ * humidity, the current density of a tile can be calculated whenever it
+ * is needed from the last stored value and the number of turns since.
+ * The total density is tracked with a histogram of the tiles' densities.
+ *
+ * All changes to the grass densities are passed on to the Statistics.
+ * While animals in different parts of the map are updated in parallel,
+ * these changes are collected per region and only added up afterwards.
+ */
+public class Landscape
+{
+	//Map strips with fewer tiles than this are not split up any further
+	private static final int REGROWTH_STRIP_SIZE = 16384;
+	private static final ForkJoinPool regrowthPool = new ForkJoinPool();
+	//Lazy tiles must be refreshed at least this often, as their time stamps wrap around
+	private static final int LAZY_REFRESH_INTERVAL = 1 << 15;
+	//Histogram groups in lazy mode: one per humidity value (-2 to 2), plus water tiles
+	private static final int WATER_GROUP = 5;
+	
+	private final int xsize, ysize;
+	private final byte[] grass; //The grass density of each tile (0-100)
+	private final byte[] humidity; //The local humidity value of each tile (-2 to 2)
+	private final byte[] occupant; //The OccupantType of each tile, as given by toInt()
+	private final BitSet nearWater; //Which tiles lie close to a water tile?
+	private final Statistics statistics;
+	
+	//Change tracking: which tiles have changed their appearance since the last snapshot?
+	private final byte[] changed; //1 if the tile has changed
+	private final boolean[] changedRows; //true if any tile in the row has changed
+	private byte[] shownGrass; //Lazy mode only: the grass class of each tile at the last snapshot
+	
+	//Variables needed for the lazy grass mode
+	private final boolean lazy;
+	private int turn; //How many times has the grass been regrown?
+	private char[] lastUpdate; //The turn (modulo 2^16) at which each tile's grass was stored
+	private byte lazyHumidity; //The global humidity that the lazy tiles are growing with
+	private int[][] grassHistogram; //How many tiles in each group have which grass density?
+	
+	//Variables needed while the map is split into regions (see splitIntoRegions())
+	private int[] regionOfRow; //Which region does each row belong to? (null if not split)
+	private int[][] regionChanges; //The change in tiles per group and density in each region
+
+	/**
+	 * The constructor.
+	 * @param xsize, ysize The dimensions of the map
+	 * @param startingHumidity
+	 * @param startingGrassDensity This is capped to 0-100.
+	 * @param lazyGrass Use the lazy grass mode?
+	 * @param statistics The statistics to keep up to date
+	 */
+	public Landscape(int xsize, int ysize, Humidity startingHumidity, int startingGrassDensity,
+					 boolean lazyGrass, Statistics statistics)
+	{
+		this.xsize = xsize;
+		this.ysize = ysize;
+		int tiles = xsize*ysize;
+		grass = new byte[tiles];
+		humidity = new byte[tiles];
+		occupant = new byte[tiles];
+		nearWater = new BitSet(tiles);
+		changed = new byte[tiles];
+		changedRows = new boolean[ysize];
+		if (startingGrassDensity > 100) startingGrassDensity = 100;
+		else if (startingGrassDensity < 0) startingGrassDensity = 0;
+		Arrays.fill(grass, (byte) startingGrassDensity);
+		Arrays.fill(humidity, (byte) startingHumidity.getValue());
+		Arrays.fill(occupant, (byte) OccupantType.NONE.toInt());
+		this.statistics = statistics;
+		int[] startingHistogram = new int[101];
+		startingHistogram[startingGrassDensity] = tiles;
+		statistics.setGrassHistogram(startingHistogram);
+		lazy = lazyGrass;
+		if (lazy) {
+			turn = 0;
+			lastUpdate = new char[tiles];
+			lazyHumidity = (byte) startingHumidity.getValue();
+			shownGrass = new byte[tiles];
+			Arrays.fill(shownGrass, grassClass(startingGrassDensity));
+		}
+	}
+
+	/**
+	 * Recalculate the grass density of every tile, setting the local
+	 * humidity of all tiles that are not near water to the given value.
+	 * Tiles are independent of each other, so on large maps this is done
+	 * in parallel, in strips of rows.
+	 * @param globalHumidity
+	 * @return The sum of the grass densities of all tiles
+	 */
+	public long regrowGrass(Humidity globalHumidity)
+	{
+		if (lazy) return regrowLazily((byte) globalHumidity.getValue());
+		GrassRegrowth regrowth = new GrassRegrowth(0, ysize, (byte) globalHumidity.getValue());
+		if ((long) xsize*ysize <= REGROWTH_STRIP_SIZE) statistics.setGrassHistogram(regrowth.compute());
+		else statistics.setGrassHistogram(regrowthPool.invoke(regrowth));
+		return statistics.getTotalGrassDensity();
+	}
+
+	/**
+	 * Regrow the grass on a strip of rows, splitting it in two if it is
+	 * too large. Each task returns a histogram of the grass densities on its
+	 * strip, and these are added up as the tasks are joined. As they are
+	 * integers, the result is exactly the same as that of a sequential pass.
+	 */
+	private class GrassRegrowth extends RecursiveTask<int[]>
+	{
+		private static final long serialVersionUID = 1L;
+		private final int fromRow, toRow; //toRow is exclusive
+		private final byte globalHumidity;
+
+		GrassRegrowth(int fromRow, int toRow, byte globalHumidity)
+		{
+			this.fromRow = fromRow;
+			this.toRow = toRow;
+			this.globalHumidity = globalHumidity;
+		}
+
+		@Override
+		protected int[] compute()
+		{
+			int rows = toRow - fromRow;
+			if (rows > 1 && (long) rows*xsize > REGROWTH_STRIP_SIZE) {
+				int middle = fromRow + rows/2;
+				GrassRegrowth lower = new GrassRegrowth(fromRow, middle, globalHumidity);
+				GrassRegrowth upper = new GrassRegrowth(middle, toRow, globalHumidity);
+				lower.fork();
+				int[] histogram = upper.compute();
+				int[] lowerHistogram = lower.join();
+				for (int density = 0; density <= 100; density++) {
+					histogram[density] += lowerHistogram[density];
+				}
+				return histogram;
+			}
+			int[] histogram = new int[101];
+			int end = toRow*xsize;
+			for (int i = fromRow*xsize; i < end; i++) {
+				if (!nearWater.get(i)) humidity[i] = globalHumidity;
+				int density = regrownDensity(i);
+				if (grassClass(density) != grassClass(grass[i])) markChanged(i);
+				grass[i] = (byte) density;
+				histogram[density]++;
+			}
+			return histogram;
+		}
+	}
+
+	/**
+	 * Recalculate the grass density of a tile based on its humidity.
+	 * Min: 0 Max: 100
+	 * @return the new grass density
+	 */
+	int calculateGrassDensity(int i)
+	{
+		int density;
+		if (lazy) density = regrow(grassAt(i), group(i));
+		else density = regrownDensity(i);
+		setGrass(i, density);
+		return density;
+	}
+
+	/**
+	 * Calculate the grass density of a tile after one turn of eager regrowth.
+	 */
+	private int regrownDensity(int i)
+	{
+		int density = grass[i] + 2*humidity[i];
+		if (density >= 100) density = 100;
+		else if (density <= 0) density = 0;
+		//If this is a water tile, the grass density is always 100
+		if (occupant[i] == OccupantType.WATER.toInt()) density = 100;
+		return density;
+	}
+
+	/*
+	 * Lazy grass mode
+	 */
+
+	/**
+	 * Regrow the grass in lazy mode. Instead of touching every tile, only
+	 * the grass histogram is advanced by one turn. If the global humidity
+	 * has changed, all tiles have to be brought up to date first.
+	 * @return The sum of the grass densities of all tiles
+	 */
+	private long regrowLazily(byte globalHumidity)
+	{
+		if (grassHistogram == null) buildGrassHistogram();
+		if (globalHumidity != lazyHumidity) {
+			storeAllTiles();
+			for (int i = 0; i < grass.length; i++) {
+				if (!nearWater.get(i)) humidity[i] = globalHumidity;
+			}
+			lazyHumidity = globalHumidity;
+			buildGrassHistogram();
+		}
+		turn++;
+		int[] totalHistogram = new int[101];
+		for (int g = 0; g < grassHistogram.length; g++) {
+			int[] oldHistogram = grassHistogram[g];
+			int[] newHistogram = new int[101];
+			for (int density = 0; density <= 100; density++) {
+				newHistogram[regrow(density, g)] += oldHistogram[density];
+			}
+			for (int density = 0; density <= 100; density++) {
+				totalHistogram[density] += newHistogram[density];
+			}
+			grassHistogram[g] = newHistogram;
+		}
+		statistics.setGrassHistogram(totalHistogram);
+		if (turn % LAZY_REFRESH_INTERVAL == 0) storeAllTiles();
+		return statistics.getTotalGrassDensity();
+	}
+
+	/**
+	 * One turn of regrowth for a tile of the given histogram group.
+	 */
+	private static int regrow(int density, int group)
+	{
+		if (group == WATER_GROUP) return 100;
+		density += 2*(group-2);
+		if (density >= 100) return 100;
+		else if (density <= 0) return 0;
+		else return density;
+	}
+
+	/**
+	 * Which histogram group does this tile belong to?
+	 */
+	private int group(int i)
+	{
+		if (occupant[i] == OccupantType.WATER.toInt()) return WATER_GROUP;
+		else return humidity[i]+2;
+	}
+
+	/**
+	 * Count the current grass densities of all tiles.
+	 */
+	private void buildGrassHistogram()
+	{
+		grassHistogram = new int[WATER_GROUP+1][101];
+		for (int i = 0; i < grass.length; i++) {
+			grassHistogram[group(i)][grassAt(i)]++;
+		}
+	}
+
+	/**
+	 * Return the current grass density of a tile. In lazy mode, this is
+	 * worked out from the stored value and the number of turns since then.
+	 */
+	private int grassAt(int i)
+	{
+		if (!lazy) return grass[i];
+		int elapsed = (turn - lastUpdate[i]) & 0xFFFF;
+		if (elapsed == 0) return grass[i];
+		//If this is a water tile, the grass density is always 100
+		if (occupant[i] == OccupantType.WATER.toInt()) return 100;
+		int density = grass[i] + 2*humidity[i]*elapsed;
+		if (density >= 100) return 100;
+		else if (density <= 0) return 0;
+		else return density;
+	}
+
+	/**
+	 * Store the current grass density of every tile.
+	 */
+	private void storeAllTiles()
+	{
+		for (int i = 0; i < grass.length; i++) {
+			grass[i] = (byte) grassAt(i);
+			lastUpdate[i] = (char) turn;
+		}
+	}
+
+	/**
+	 * Change the grass density of a tile, keeping the histograms up to date.
+	 */
+	private void setGrass(int i, int density)
+	{
+		int oldDensity = grassAt(i);
+		if (regionOfRow != null) {
+			int[] changes = regionChanges[regionOfRow[i/xsize]];
+			int offset = lazy ? group(i)*101 : 0;
+			changes[offset+oldDensity]--;
+			changes[offset+density]++;
+		}
+		else {
+			if (lazy && grassHistogram != null) {
+				grassHistogram[group(i)][oldDensity]--;
+				grassHistogram[group(i)][density]++;
+			}
+			statistics.grassChanged(oldDensity, density);
+		}
+		if (lazy) lastUpdate[i] = (char) turn;
+		else if (grassClass(density) != grassClass(oldDensity)) markChanged(i);
+		grass[i] = (byte) density;
+	}
+
+	/**
+	 * Split the map into regions of rows that can be changed in parallel.
+	 * Until mergeRegions() is called, the grass changes in each region are
+	 * collected separately instead of being passed on straight away. (Changing
+	 * water tiles or humidities is not allowed in the meantime.)
+	 * @param rowRegions The region that each row belongs to
+	 * @param regions The number of regions
+	 */
+	void splitIntoRegions(int[] rowRegions, int regions)
+	{
+		int size = lazy ? (WATER_GROUP+1)*101 : 101;
+		if (regionChanges == null || regionChanges.length < regions) {
+			regionChanges = new int[regions][size];
+		}
+		regionOfRow = rowRegions;
+	}
+
+	/**
+	 * Add up the grass changes of all regions and pass them on, then go
+	 * back to passing on every change as it happens.
+	 */
+	void mergeRegions()
+	{
+		int[] total = new int[101];
+		for (int r = 0; r < regionChanges.length; r++) {
+			int[] changes = regionChanges[r];
+			for (int k = 0; k < changes.length; k++) {
+				if (changes[k] == 0) continue;
+				if (lazy && grassHistogram != null) grassHistogram[k/101][k%101] += changes[k];
+				total[k%101] += changes[k];
+				changes[k] = 0;
+			}
+		}
+		statistics.addGrassChanges(total);
+		regionOfRow = null;
+	}
+
+	/**
+	 * Change the histogram group of a tile (i.e. its humidity or water
+	 * status) in lazy mode. The tile is first brought up to date, as the lazy
+	 * regrowth assumes that its humidity has not changed since it was last stored.
+	 */
+	private void changeGroup(int i, byte newHumidity, byte newOccupant)
+	{
+		int density = grassAt(i);
+		if (grassHistogram != null) grassHistogram[group(i)][density]--;
+		grass[i] = (byte) density;
+		lastUpdate[i] = (char) turn;
+		humidity[i] = newHumidity;
+		occupant[i] = newOccupant;
+		if (grassHistogram != null) grassHistogram[group(i)][density]++;
+	}
+
+	/**
+	 * Copy the current state of every tile into the given arrays (which must
+	 * have one entry per tile). In lazy mode, the grass densities are worked
+	 * out as they are copied, without changing the stored values. (As lazy
+	 * tiles change without being touched, this is also where their grass
+	 * threshold crossings are found.)
+	 */
+	public void copyLayers(byte[] grassOut, byte[] humidityOut, byte[] occupantOut)
+	{
+		if (lazy) {
+			for (int i = 0; i < grass.length; i++) {
+				int density = grassAt(i);
+				grassOut[i] = (byte) density;
+				byte grassClass = grassClass(density);
+				if (grassClass != shownGrass[i]) {
+					shownGrass[i] = grassClass;
+					markChanged(i);
+				}
+			}
+		}
+		else System.arraycopy(grass, 0, grassOut, 0, grass.length);
+		System.arraycopy(humidity, 0, humidityOut, 0, humidity.length);
+		System.arraycopy(occupant, 0, occupantOut, 0, occupant.length);
+	}
+
+	/**
+	 * Collect the indices of all tiles that have changed their appearance
+	 * since the last call, and reset the change flags. A tile changes its
+	 * appearance when its occupant changes, or when its grass density crosses
+	 * one of the thresholds at which the Display changes its colour.
+	 * @param out The array to write the indices into, in ascending order
+	 * @return The number of changed tiles (which may be larger than out.length,
+	 *         in which case only the first out.length indices are written)
+	 */
+	public int collectChanges(int[] out)
+	{
+		int count = 0;
+		for (int y = 0; y < ysize; y++) {
+			if (!changedRows[y]) continue;
+			changedRows[y] = false;
+			int end = (y+1)*xsize;
+			for (int i = y*xsize; i < end; i++) {
+				if (changed[i] == 0) continue;
+				changed[i] = 0;
+				if (count < out.length) out[count] = i;
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Flag a tile as changed. (Each tile and each row only has a flag of its
+	 * own, so this is safe while different rows are updated in parallel.)
+	 */
+	private void markChanged(int i)
+	{
+		changed[i] = 1;
+		changedRows[i/xsize] = true;
+	}
+
+	/**
+	 * Classify a grass density by the colour that the Display gives it
+	 * (0: bare, 1: sparse (1-20), 2: grassy (over 20)).
+	 */
+	private static byte grassClass(int density)
+	{
+		if (density > 20) return 2;
+		else if (density > 0) return 1;
+		else return 0;
+	}
+
+	/**
+	 * Return the array index of the tile at (x, y).
+	 */
+	public int index(int x, int y)
+	{
+		return y*xsize + x;
+	}
+
+	/**
+	 * Is (x, y) on the map?
+	 */
+	public boolean contains(int x, int y)
+	{
+		return x >= 0 && y >= 0 && x < xsize && y < ysize;
+	}
+
+	/*
+	 * Getters and setters
+	 */
+
+	public int getXSize()
+	{
+		return xsize;
+	}
+
+	public int getYSize()
+	{
+		return ysize;
+	}
+
+	public int getGrassDensity(int x, int y)
+	{
+		return grassAt(index(x, y));
+	}
+
+	public void reduceGrassDensity(int x, int y, int amount)
+	{
+		int i = index(x, y);
+		int density = grassAt(i) - amount;
+		if (density < 0) density = 0;
+		setGrass(i, density);
+	}
+
+	public OccupantType getOccupant(int x, int y)
+	{
+		return OccupantType.fromInt(occupant[index(x, y)]);
+	}
+
+	public void setOccupant(int x, int y, OccupantType newOccupant)
+	{
+		int i = index(x, y);
+		byte newValue = (byte) newOccupant.toInt();
+		byte water = (byte) OccupantType.WATER.toInt();
+		if (newValue != occupant[i]) markChanged(i);
+		if (lazy && (occupant[i] == water || newValue == water)) {
+			changeGroup(i, humidity[i], newValue);
+		}
+		else occupant[i] = newValue;
+	}
+
+	public Humidity getLocalHumidity(int x, int y)
+	{
+		return Humidity.getStatus(humidity[index(x, y)]);
+	}
+
+	public void setLocalHumidity(int x, int y, Humidity localHumidity)
+	{
+		int i = index(x, y);
+		if (lazy) changeGroup(i, (byte) localHumidity.getValue(), occupant[i]);
+		else humidity[i] = (byte) localHumidity.getValue();
+	}
+
+	public boolean nearWater(int x, int y)
+	{
+		return nearWater.get(index(x, y));
+	}
+
+	public void setNearWater(int x, int y, boolean newValue)
+	{
+		nearWater.set(index(x, y), newValue);
+	}
+}
@@ -9,29 +9,25 @@ import controller.OccupantType;
  * This is a representation of a discrete area (tile) on the map. It monitors 
  * what animals are on it, what it's grass density is, etc.
  * 
+ * The actual data is stored in the Landscape, this class is only a
+ * lightweight view onto one of its tiles.
+ * 
  * @author Daniel Vedder
  * @version 30.8.2014
  */
 public class MapField 
 {
-	private int x, y;
-	private int grassDensity;
-	private boolean isNearWater;
-	private Humidity localHumidity;
-	private OccupantType occupant;
+	private final Landscape landscape;
+	private final int x, y;
 	
 	/**
 	 * The constructor.
 	 */
-	public MapField(int xstart, int ystart, OccupantType newOccupant,
-					Humidity startingHumidity, int startingGrassDensity)
+	public MapField(Landscape landscape, int x, int y)
 	{
-		x = xstart;
-		y = ystart;
-		occupant = newOccupant;
-		localHumidity = startingHumidity;
-		grassDensity = startingGrassDensity;
-		isNearWater = false;
+		this.landscape = landscape;
+		this.x = x;
+		this.y = y;
 	}
 	
 	/**
@@ -40,11 +36,7 @@ public class MapField
 	 */
 	public void calculateGrassDensity()
 	{
-		grassDensity = grassDensity + 2*localHumidity.getValue();
-		if (grassDensity >= 100) grassDensity = 100;
-		else if (grassDensity <= 0)	grassDensity = 0;
-		//If this is a water tile, the grass density is always 100
-		if (occupant == OccupantType.WATER)	grassDensity = 100;
+		landscape.calculateGrassDensity(landscape.index(x, y));
 	}
 
 	/*
@@ -59,46 +51,45 @@ public class MapField
 		HashMap<String, Integer> info = new HashMap<String, Integer>();
 		info.put("X", x);
 		info.put("Y", y);
-		info.put("Grass density", grassDensity);
-		info.put("Local humidity", localHumidity.getValue());
-		info.put("Occupant", occupant.toInt());
+		info.put("Grass density", getGrassDensity());
+		info.put("Local humidity", getLocalHumidity().getValue());
+		info.put("Occupant", getOccupant().toInt());
 		return info;
 	}
 	
 	public void setNearWater(boolean newValue)
 	{
-		isNearWater = newValue;
+		landscape.setNearWater(x, y, newValue);
 	}
 	
 	public boolean nearWater()
 	{
-		return isNearWater;
+		return landscape.nearWater(x, y);
 	}
 	
 	public int getGrassDensity() {
-		return grassDensity;
+		return landscape.getGrassDensity(x, y);
 	}
 
 	public OccupantType getOccupant() {
-		return occupant;
+		return landscape.getOccupant(x, y);
 	}
 
 	public void setOccupant(OccupantType occupant) {
-		this.occupant = occupant;
+		landscape.setOccupant(x, y, occupant);
 	}
 
 	public Humidity getLocalHumidity() {
-		return localHumidity;
+		return landscape.getLocalHumidity(x, y);
 	}
 
 	public void setLocalHumidity(Humidity localHumidity) {
-		this.localHumidity = localHumidity;
+		landscape.setLocalHumidity(x, y, localHumidity);
 	}
 	
 	public void reduceGrassDensity(int amount)
 	{
-		grassDensity -= amount;
-		if (grassDensity < 0) grassDensity = 0;
+		landscape.reduceGrassDensity(x, y, amount);
 	}
 	
 }
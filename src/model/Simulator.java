@@ -1,12 +1,19 @@
 package model;
 
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Random;
+import java.util.BitSet;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import main.EcologiaIO;
+import main.EventLog;
 import controller.Humidity;
+import controller.NewsEvent;
 import controller.OccupantType;
+import controller.Parameters;
+import controller.Snapshot;
 import controller.World;
 
 /**
@@ -19,18 +26,49 @@ import controller.World;
  */
 public class Simulator 
 {
-	private static ArrayList<Herbivore> herbivorePopulation;
-	private static ArrayList<Carnivore> carnivorePopulation;
-	private static MapField[][] map;
-	private Random random;
+	private World world; //The world that this simulation reports to
+	private ArrayList<Herbivore> herbivorePopulation;
+	private ArrayList<Carnivore> carnivorePopulation;
+	private Landscape map;
+	private Animal[] animalMap; //Which animal is standing on each field?
+	private boolean deathsThisTurn; //Do the populations need to be compacted?
+	private Parameters params; //The parameter settings for this run
+	private Statistics statistics;
+	private int fightsWon = 1;
+	private int totalFights = 1; //Start at 1 to avoid division by zero errors
+	private SplittableRandom random; //For setting up the map and the initial populations
+	private int publishedTurn = -1; //The update of the last snapshot sent to World
+	
+	//Variables needed for parallel updates (see updateInStrips())
+	//(All simulators share one pool per number of threads, so resets and ensembles don't add threads)
+	private static final ConcurrentHashMap<Integer, ForkJoinPool> pools = new ConcurrentHashMap<Integer, ForkJoinPool>();
+	private ForkJoinPool pool;
+	private boolean inStrips; //Are the animals being updated in parallel strips right now?
+	private ArrayList<ArrayList<Animal>> stripAnimals; //The animals in each strip
+	private ArrayList<ArrayList<Animal>> bornInRow, diedInRow; //Births and deaths on each row
+	private ArrayList<ArrayList<NewsEvent>> causesInRow; //The causes of these deaths
+	
+	//Variables needed for intent updates (see updateByIntents())
+	private boolean planning; //Are the animals planning their turns right now?
+	private BitSet claimed; //Which fields have been given to an animal in this commit phase?
+	
+	//The subsystems that get their own random number streams (see World.deriveSeed())
+	private static final int SETUP_STREAM = 0;
+	private static final int ANIMAL_STREAM = 1;
+	private static final int COMMIT_ORDER_STREAM = 2;
 	
 	/**
-	 * The constructor.
+	 * The constructor. Several simulators can run side by side, as long
+	 * as each of them has its own World.
+	 * @param world The world that holds the parameters for this run
 	 */
-	public Simulator()
+	public Simulator(World world)
 	{
 		EcologiaIO.debug("Creating simulator");
-		random = new Random();
+		this.world = world;
+		params = world.snapshotParameters();
+		random = new SplittableRandom(world.deriveSeed(SETUP_STREAM, 0));
+		EcologiaIO.log("Random seed: "+world.getSeed());
 		initMap();
 		initWaterTiles();
 		initPopulations();
@@ -44,34 +82,361 @@ public class Simulator
 	{
 		//Calculate the new grass density on each plot
 		EcologiaIO.debug("Simulator: Recalculating grass density.");
-		double averageDensity = 0;
-		int xsize = World.getInstance().getParam("xsize");
-		int ysize = World.getInstance().getParam("ysize");
-		for (int x = 0; x < xsize; x++) {
+		Humidity humidity = Humidity.getStatus(world.getParam("humidity"));
+		map.regrowGrass(humidity);
+		world.setAverageGrassDensity(statistics.getAverageGrassDensity());
+		
+		//Each animal has its turn (dead animals stay in the lists until the end of the turn)
+		if (params.updateMode == Parameters.INTENT_UPDATE) updateByIntents();
+		else if (params.updateMode != Parameters.STRIP_UPDATE || !updateInStrips()) {
+			EcologiaIO.debug("Simulator: Updating herbivores.");
+			for (int h = 0; h < herbivorePopulation.size(); h++) {
+				Herbivore herbivore = herbivorePopulation.get(h);
+				if (herbivore.isAlive()) herbivore.update();
+			}
+			EcologiaIO.debug("Simulator: Updating carnivores.");
+			for (int c = 0; c < carnivorePopulation.size(); c++) { // <-- C++ in a Java program :D
+				Carnivore carnivore = carnivorePopulation.get(c);
+				if (carnivore.isAlive()) carnivore.update();
+			}
+		}
+		EcologiaIO.analysis(() -> {
+			double hunt_success = (double) fightsWon / (double) totalFights;
+			return "Carnivore hunt success rate: "+(int) (hunt_success*100)+"%";
+		});
+
+		compactPopulations();
+		updateWorld();
+	}
+	
+	/**
+	 * Update the animals in parallel. The map is cut into horizontal strips
+	 * that are more than twice as high as the furthest any animal can see or
+	 * reach this turn. Then no animal can touch anything more than one strip
+	 * away, so all even-numbered strips can be updated at the same time,
+	 * followed by all odd-numbered ones. Within a strip, the herbivores go
+	 * first, then the carnivores, each in population order.
+	 *
+	 * Anything that animals in two strips of the same phase might both
+	 * change is collected by map row instead: the grass changes (see
+	 * Landscape.splitIntoRegions()), births and deaths. These are merged in
+	 * row order afterwards, which is also when the newborns get their ID
+	 * numbers. As the strips only depend on the map size and the genomes,
+	 * the results do not depend on the number of threads. Unlike in serial
+	 * updates, newborns only have their first turn in the next update.
+	 * @return false if the map is too small to be split up
+	 */
+	private boolean updateInStrips()
+	{
+		int reach = 1;
+		for (int h = 0; h < herbivorePopulation.size(); h++) {
+			reach = Math.max(reach, reach(herbivorePopulation.get(h)));
+		}
+		for (int c = 0; c < carnivorePopulation.size(); c++) {
+			reach = Math.max(reach, reach(carnivorePopulation.get(c)));
+		}
+		int ysize = params.ysize;
+		int strips = ysize/(2*reach+1);
+		if (strips < 2) return false;
+		EcologiaIO.debug(() -> "Simulator: Updating animals in "+strips+" strips.");
+		int[] stripOfRow = new int[ysize];
+		for (int s = 0; s < strips; s++) {
+			for (int y = stripStart(s, strips); y < stripStart(s+1, strips); y++) stripOfRow[y] = s;
+		}
+		//Sort the animals into strips by their position at the start of the turn
+		if (stripAnimals == null) {
+			stripAnimals = new ArrayList<ArrayList<Animal>>();
+			bornInRow = new ArrayList<ArrayList<Animal>>();
+			diedInRow = new ArrayList<ArrayList<Animal>>();
+			causesInRow = new ArrayList<ArrayList<NewsEvent>>();
 			for (int y = 0; y < ysize; y++) {
-				if (!map[x][y].nearWater()) {
-					map[x][y].setLocalHumidity(Humidity.getStatus(World.getInstance().getParam("humidity")));
+				bornInRow.add(new ArrayList<Animal>());
+				diedInRow.add(new ArrayList<Animal>());
+				causesInRow.add(new ArrayList<NewsEvent>());
+			}
+		}
+		while (stripAnimals.size() < strips) stripAnimals.add(new ArrayList<Animal>());
+		for (int s = 0; s < stripAnimals.size(); s++) stripAnimals.get(s).clear();
+		for (int h = 0; h < herbivorePopulation.size(); h++) {
+			Herbivore herbivore = herbivorePopulation.get(h);
+			stripAnimals.get(stripOfRow[herbivore.getY()]).add(herbivore);
+		}
+		for (int c = 0; c < carnivorePopulation.size(); c++) {
+			Carnivore carnivore = carnivorePopulation.get(c);
+			stripAnimals.get(stripOfRow[carnivore.getY()]).add(carnivore);
+		}
+		inStrips = true;
+		for (int phase = 0; phase < 2; phase++) {
+			//Each row of the strips that are not updated now goes to the nearest one that is
+			int[] regionOfRow = new int[ysize];
+			for (int y = 0; y < ysize; y++) {
+				int s = stripOfRow[y];
+				if (s % 2 == phase) regionOfRow[y] = s;
+				else {
+					int start = stripStart(s, strips);
+					boolean upper = y < start+(stripStart(s+1, strips)-start)/2;
+					if ((upper && s > 0) || s+1 == strips) regionOfRow[y] = s-1;
+					else regionOfRow[y] = s+1;
 				}
-				map[x][y].calculateGrassDensity();
-				averageDensity += map[x][y].getGrassDensity();
 			}
+			map.splitIntoRegions(regionOfRow, strips);
+			updateStrips(phase, strips);
+			map.mergeRegions();
+		}
+		inStrips = false;
+		mergeBirthsAndDeaths();
+		return true;
+	}
+	
+	/**
+	 * Return the first row of a strip (or ysize if s == strips).
+	 */
+	private int stripStart(int s, int strips)
+	{
+		return (int) ((long) s*params.ysize/strips);
+	}
+	
+	/**
+	 * How far away from its starting point can this animal see or change
+	 * anything during its turn?
+	 */
+	private static int reach(Animal a)
+	{
+		return Math.max(a.getGenome().getSight(), a.getGenome().getSpeed()+1);
+	}
+	
+	/**
+	 * Update every other strip, starting with the given one, at the same time.
+	 */
+	private void updateStrips(int first, int strips)
+	{
+		if (getPool() == null) {
+			for (int s = first; s < strips; s += 2) new StripUpdate(stripAnimals.get(s)).compute();
+			return;
+		}
+		ArrayList<StripUpdate> tasks = new ArrayList<StripUpdate>();
+		for (int s = first; s < strips; s += 2) {
+			StripUpdate task = new StripUpdate(stripAnimals.get(s));
+			pool.execute(task);
+			tasks.add(task);
+		}
+		for (int t = 0; t < tasks.size(); t++) tasks.get(t).join();
+	}
+	
+	/**
+	 * Return the thread pool for parallel updates (or null if they should
+	 * only use one thread).
+	 */
+	private ForkJoinPool getPool()
+	{
+		int threads = params.updateThreads;
+		if (threads <= 0) threads = Runtime.getRuntime().availableProcessors();
+		if (threads == 1) return null;
+		if (pool == null) pool = pools.computeIfAbsent(threads, ForkJoinPool::new);
+		return pool;
+	}
+	
+	/**
+	 * Give every living animal in a strip its turn.
+	 */
+	private static class StripUpdate extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+		private final ArrayList<Animal> animals;
+		
+		StripUpdate(ArrayList<Animal> animals)
+		{
+			this.animals = animals;
+		}
+		
+		@Override
+		protected void compute()
+		{
+			for (int a = 0; a < animals.size(); a++) {
+				Animal animal = animals.get(a);
+				if (animal.isAlive()) animal.update();
+			}
+		}
+	}
+	
+	/**
+	 * Add the births and deaths of a parallel update to the populations, the
+	 * statistics and the logs, row by row. The newborns get their ID numbers
+	 * (and random number streams) now.
+	 */
+	private void mergeBirthsAndDeaths()
+	{
+		for (int y = 0; y < params.ysize; y++) {
+			ArrayList<Animal> born = bornInRow.get(y);
+			for (int b = 0; b < born.size(); b++) {
+				Animal a = born.get(b);
+				a.setID(world.getNextID());
+				register(a);
+			}
+			born.clear();
 		}
-		averageDensity = averageDensity/(xsize*ysize);
-		World.getInstance().setAverageGrassDensity((int) averageDensity);
+		for (int y = 0; y < params.ysize; y++) {
+			ArrayList<Animal> died = diedInRow.get(y);
+			ArrayList<NewsEvent> causes = causesInRow.get(y);
+			for (int d = 0; d < died.size(); d++) {
+				recordDeath(died.get(d), causes.get(d));
+			}
+			died.clear();
+			causes.clear();
+		}
+	}
+	
+	/**
+	 * Update the animals in two phases. First, every animal plans its turn
+	 * against the state of the map at the end of the last update, which
+	 * nobody changes in the meantime, so all animals can plan in parallel.
+	 * An animal's own age, energy and exhaustion change as it plans, but its
+	 * moves, grazing, attacks, births and death are only noted down in its
+	 * Intent. Then the intents are carried out, one animal after the other,
+	 * in an order that is drawn anew every update (from the seed, the turn and
+	 * the animal's ID) instead of herbivores first and oldest first:
+	 *
+	 *  1. Animals that died while planning are taken off the map.
+	 *  2. Moves and births: animals can only move onto, or give birth on,
+	 *     fields that were empty at the start of the turn. If several want
+	 *     the same field, the first in the order gets it. The others stay
+	 *     where they started, or the child is not born (and its energy goes
+	 *     back to the parent).
+	 *  3. Attacks: a carnivore fights its prey if it is still next to it.
+	 *  4. Grazing: herbivores graze where they ended up, and only gain energy
+	 *     for the grass that is actually there.
+	 *
+	 * The results do not depend on the number of threads. Newborns have
+	 * their first turn in the next update.
+	 */
+	private void updateByIntents()
+	{
+		ArrayList<Animal> animals = new ArrayList<Animal>(herbivorePopulation.size()+
+														  carnivorePopulation.size());
+		animals.addAll(herbivorePopulation);
+		animals.addAll(carnivorePopulation);
+		EcologiaIO.debug("Simulator: Planning the animals' turns.");
+		planning = true;
+		Planning plans = new Planning(animals, 0, animals.size());
+		if (getPool() == null) plans.compute();
+		else pool.invoke(plans);
+		planning = false;
 		
-		//Each animal has its turn
-		EcologiaIO.debug("Simulator: Updating herbivores.");
-		for (int h = 0; h < herbivorePopulation.size(); h++) {
-			herbivorePopulation.get(h).update();
+		EcologiaIO.debug("Simulator: Carrying out the animals' intents.");
+		animals.sort((a, b) -> a.intent.priority != b.intent.priority ?
+					 Long.compare(a.intent.priority, b.intent.priority) : Long.compare(a.getID(), b.getID()));
+		for (int i = 0; i < animals.size(); i++) {
+			Animal a = animals.get(i);
+			if (a.intent.death == null) continue;
+			a.setPosition(a.intent.fromX, a.intent.fromY);
+			removeAnimal(a.getX(), a.getY(), a.getType(), a.intent.death);
+		}
+		if (claimed == null) claimed = new BitSet(params.xsize*params.ysize);
+		for (int i = 0; i < animals.size(); i++) {
+			Animal a = animals.get(i);
+			Intent intent = a.intent;
+			if (a.isAlive() && (a.getX() != intent.fromX || a.getY() != intent.fromY)) {
+				if (claim(a.getX(), a.getY())) {
+					map.setOccupant(intent.fromX, intent.fromY, OccupantType.NONE);
+					map.setOccupant(a.getX(), a.getY(), a.getType());
+					moveAnimal(intent.fromX, intent.fromY, a.getX(), a.getY());
+				}
+				else a.setPosition(intent.fromX, intent.fromY);
+			}
+			for (int c = 0; c < intent.children.size(); c++) {
+				int[] child = intent.children.get(c);
+				if (claim(child[0], child[1])) {
+					a.giveBirth(child[0], child[1], child[2], intent.childGenomes.get(c));
+					world.incGeneration(a.getGeneration()+1);
+				}
+				else if (a.isAlive()) a.changeEnergy(child[2]);
+			}
 		}
-		EcologiaIO.debug("Simulator: Updating carnivores.");
-		for (int c = 0; c < carnivorePopulation.size(); c++) { // <-- C++ in a Java program :D
-			carnivorePopulation.get(c).update();
+		claimed.clear();
+		for (int i = 0; i < animals.size(); i++) {
+			Animal a = animals.get(i);
+			if (a.getType() == OccupantType.CARNIVORE) ((Carnivore) a).commitAttack();
+		}
+		for (int i = 0; i < animals.size(); i++) {
+			Animal a = animals.get(i);
+			if (a.isAlive() && a.intent.grazing > 0) ((Herbivore) a).commitGrazing();
 		}
-		double hunt_success = (double) Carnivore.fights_won / (double) Carnivore.total_fights;
-		EcologiaIO.analysis("Carnivore hunt success rate: "+(int) (hunt_success*100)+"%");
-
-		updateWorld();
+	}
+	
+	/**
+	 * Give a field to an animal in the commit phase, unless it has already
+	 * been given to another one.
+	 * @return true if the field was still free
+	 */
+	private boolean claim(int x, int y)
+	{
+		int i = map.index(x, y);
+		if (claimed.get(i)) return false;
+		claimed.set(i);
+		return true;
+	}
+	
+	/**
+	 * Let a range of animals plan their turns, splitting it in two if it is
+	 * too large. (As the animals do not change anything but themselves
+	 * while planning, it does not matter how the work is split up.)
+	 */
+	private class Planning extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+		private static final int CHUNK_SIZE = 1024; //Ranges this small are not split up
+		private final ArrayList<Animal> animals;
+		private final int from, to; //to is exclusive
+		
+		Planning(ArrayList<Animal> animals, int from, int to)
+		{
+			this.animals = animals;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected void compute()
+		{
+			if (to - from > CHUNK_SIZE) {
+				int middle = from + (to-from)/2;
+				invokeAll(new Planning(animals, from, middle), new Planning(animals, middle, to));
+				return;
+			}
+			int turn = world.getTurn();
+			for (int i = from; i < to; i++) {
+				Animal a = animals.get(i);
+				if (a.isAlive()) a.plan(world.deriveSeed(COMMIT_ORDER_STREAM, ((long) turn << 32) | a.getID()));
+			}
+		}
+	}
+	
+	/**
+	 * Clear out all animals that died during this turn. This is done in a
+	 * single pass at the end of the turn, rather than with a (linear)
+	 * ArrayList.remove() for every single death. The order of the surviving
+	 * animals is preserved.
+	 */
+	private void compactPopulations()
+	{
+		if (!deathsThisTurn) return;
+		EcologiaIO.debug("Simulator: Removing dead animals.");
+		compact(herbivorePopulation);
+		compact(carnivorePopulation);
+		deathsThisTurn = false;
+	}
+	
+	/**
+	 * Move all living animals to the front of the list, then cut off the rest.
+	 */
+	private static <A extends Animal> void compact(ArrayList<A> population)
+	{
+		int alive = 0;
+		for (int i = 0; i < population.size(); i++) {
+			A a = population.get(i);
+			if (a.isAlive()) population.set(alive++, a);
+		}
+		population.subList(alive, population.size()).clear();
 	}
 	
 	/**
@@ -80,19 +445,39 @@ public class Simulator
 	public void updateWorld()
 	{		
 		EcologiaIO.debug("Simulator: Collecting information to send to World.");
-		//The states of all animals are collected and passed on to the World
-		ArrayList<HashMap<String, Integer>> animalInfo = new ArrayList<HashMap<String, Integer>>();
-		for (int hi = 0; hi < herbivorePopulation.size(); hi++) {
-			animalInfo.add(herbivorePopulation.get(hi).getInfo());
-		}
-		for (int ci = 0; ci < carnivorePopulation.size(); ci++) {
-			animalInfo.add(carnivorePopulation.get(ci).getInfo());
-		}
-		World.getInstance().setAnimals(animalInfo);
+		//The states of all animals and tiles are copied into the next snapshot
+		//(unless there is nobody to look at it, or the view has not read the
+		//last one yet - the changed tiles then add up until the next snapshot)
+		if (world.isPublishing() && world.isSnapshotTaken()) publishSnapshot();
+		world.summariseEvents();
 		
 		//Update the population counters
-		World.getInstance().setCarnivoreCount(carnivorePopulation.size());
-		World.getInstance().setHerbivoreCount(herbivorePopulation.size());
+		world.setCarnivoreCount(statistics.getPopulation(OccupantType.CARNIVORE));
+		world.setHerbivoreCount(statistics.getPopulation(OccupantType.HERBIVORE));
+	}
+	
+	/**
+	 * Copy the current state of the simulation into a snapshot for the view.
+	 */
+	private void publishSnapshot()
+	{
+		int turn = world.getTurn();
+		Snapshot snapshot = world.getNextSnapshot();
+		synchronized (snapshot) {
+			snapshot.clear(turn, publishedTurn, params.xsize, params.ysize);
+			for (int hi = 0; hi < herbivorePopulation.size(); hi++) {
+				herbivorePopulation.get(hi).writeInfo(snapshot);
+			}
+			for (int ci = 0; ci < carnivorePopulation.size(); ci++) {
+				carnivorePopulation.get(ci).writeInfo(snapshot);
+			}
+			map.copyLayers(snapshot.getGrassLayer(), snapshot.getHumidityLayer(),
+						   snapshot.getOccupantLayer());
+			snapshot.setChangedCount(map.collectChanges(snapshot.getChangedTiles()));
+			snapshot.finish();
+		}
+		world.publishSnapshot(snapshot);
+		publishedTurn = turn;
 	}
 	
 	/*
@@ -105,16 +490,12 @@ public class Simulator
 	private void initMap()
 	{
 		EcologiaIO.debug("Simulator: initialising map.");
-		int xsize = World.getInstance().getParam("xsize");
-		int ysize = World.getInstance().getParam("ysize");
-		map = new MapField[xsize][ysize];
-		for (int x = 0; x < xsize; x++) {
-			for (int y = 0; y < ysize; y++) {
-				map[x][y] = new MapField(x, y, OccupantType.NONE,
-										 Humidity.getStatus(World.getInstance().getParam("humidity")),
-										 World.getInstance().getParam("startGrassDensity"));
-			}
-		}
+		Humidity humidity = Humidity.getStatus(world.getParam("humidity"));
+		statistics = new Statistics(params.xsize*params.ysize);
+		world.setStatistics(statistics);
+		map = new Landscape(params.xsize, params.ysize, humidity, params.startGrassDensity,
+							params.lazyGrass, statistics);
+		animalMap = new Animal[params.xsize*params.ysize];
 	}
 	
 	/**
@@ -123,23 +504,22 @@ public class Simulator
 	private void initWaterTiles()
 	{
 		EcologiaIO.debug("Simulator: initialising water tiles.");
-		for (int i = 0; i < World.getInstance().getParam("waterTiles"); i++) {
+		for (int i = 0; i < params.waterTiles; i++) {
 			//Each water tile is placed in a random location
-			int setX = random.nextInt(World.getInstance().getParam("xsize"));
-			int setY = random.nextInt(World.getInstance().getParam("ysize"));
-			while (map[setX][setY].getOccupant() != OccupantType.NONE) {
-				setX = random.nextInt(World.getInstance().getParam("xsize"));
-				setY = random.nextInt(World.getInstance().getParam("ysize"));
+			int setX = random.nextInt(params.xsize);
+			int setY = random.nextInt(params.ysize);
+			while (map.getOccupant(setX, setY) != OccupantType.NONE) {
+				setX = random.nextInt(params.xsize);
+				setY = random.nextInt(params.ysize);
 			}
-			map[setX][setY].setOccupant(OccupantType.WATER);
+			map.setOccupant(setX, setY, OccupantType.WATER);
 			//The fields around each water tile are watered
 			for (int x = setX-2; x <= setX+2; x++) {
 				for (int y = setY-2; y <= setY+2; y++) {
-					try {
-						Simulator.getField(x, y).setNearWater(true);
-						Simulator.getField(x, y).setLocalHumidity(Humidity.SATURATION);
+					if (map.contains(x, y)) {
+						map.setNearWater(x, y, true);
+						map.setLocalHumidity(x, y, Humidity.SATURATION);
 					}
-					catch (ArrayIndexOutOfBoundsException aioobe) {} //Can be safely ignored
 				}
 			}
 		}
@@ -152,32 +532,33 @@ public class Simulator
 	{
 		carnivorePopulation = new ArrayList<Carnivore>();
 		herbivorePopulation = new ArrayList<Herbivore>();
+		deathsThisTurn = false;
 		//Create the initial carnivore population, setting each carnivore down at a random position
 		EcologiaIO.debug("Simulator: initialising carnivores.");
-		for (int j = 0; j < World.getInstance().getParam("startNoCarnivores"); j++) {
-			int setXCarnivore = random.nextInt(World.getInstance().getParam("xsize"));
-			int setYCarnivore = random.nextInt(World.getInstance().getParam("ysize"));
-			while (map[setXCarnivore][setYCarnivore].getOccupant() != OccupantType.NONE) {
-				setXCarnivore = random.nextInt(World.getInstance().getParam("xsize"));
-				setYCarnivore = random.nextInt(World.getInstance().getParam("ysize"));
+		for (int j = 0; j < params.startNoCarnivores; j++) {
+			int setXCarnivore = random.nextInt(params.xsize);
+			int setYCarnivore = random.nextInt(params.ysize);
+			while (map.getOccupant(setXCarnivore, setYCarnivore) != OccupantType.NONE) {
+				setXCarnivore = random.nextInt(params.xsize);
+				setYCarnivore = random.nextInt(params.ysize);
 			}
-			int startEnergyCarnivores = World.getInstance().getParam("startEnergyCarnivores");
-			carnivorePopulation.add(new Carnivore(World.getInstance().getNextID(), 
-					Carnivore.defaultGenome, 1, setXCarnivore, setYCarnivore, 
+			int startEnergyCarnivores = params.startEnergyCarnivores;
+			addAnimal(new Carnivore(this, world.getNextID(),
+					world.getStartGenome(OccupantType.CARNIVORE), 1, setXCarnivore, setYCarnivore, 
 					startEnergyCarnivores, 0));
 		}
 		//Create the initial herbivore population, setting each herbivore down at a random position
 		EcologiaIO.debug("Simulator: initialising herbivores.");
-		for (int i = 0; i < World.getInstance().getParam("startNoHerbivores"); i++) {
-			int setXHerbivore = random.nextInt(World.getInstance().getParam("xsize"));
-			int setYHerbivore = random.nextInt(World.getInstance().getParam("ysize"));
-			while (map[setXHerbivore][setYHerbivore].getOccupant() != OccupantType.NONE) {
-				setXHerbivore = random.nextInt(World.getInstance().getParam("xsize"));
-				setYHerbivore = random.nextInt(World.getInstance().getParam("ysize"));
+		for (int i = 0; i < params.startNoHerbivores; i++) {
+			int setXHerbivore = random.nextInt(params.xsize);
+			int setYHerbivore = random.nextInt(params.ysize);
+			while (map.getOccupant(setXHerbivore, setYHerbivore) != OccupantType.NONE) {
+				setXHerbivore = random.nextInt(params.xsize);
+				setYHerbivore = random.nextInt(params.ysize);
 			}
-			int startEnergyHerbivores = World.getInstance().getParam("startEnergyHerbivores");
-			herbivorePopulation.add(new Herbivore(World.getInstance().getNextID(), 
-					Herbivore.defaultGenome, 1, setXHerbivore, setYHerbivore, 
+			int startEnergyHerbivores = params.startEnergyHerbivores;
+			addAnimal(new Herbivore(this, world.getNextID(),
+					world.getStartGenome(OccupantType.HERBIVORE), 1, setXHerbivore, setYHerbivore, 
 					startEnergyHerbivores, 0));
 		}
 	}
@@ -186,78 +567,174 @@ public class Simulator
 	 * Interface methods for interacting with map and animals
 	 */
 	
+	/**
+	 * Return the world that this simulation reports to.
+	 */
+	public World getWorld()
+	{
+		return world;
+	}
+	
+	/**
+	 * Return a new random number stream for the animal with this ID. Every
+	 * animal has its own stream, derived from the seed of the run and its ID,
+	 * so that a run can be repeated exactly, whatever order animals are
+	 * updated in.
+	 */
+	SplittableRandom newAnimalStream(int id)
+	{
+		return new SplittableRandom(world.deriveSeed(ANIMAL_STREAM, id));
+	}
+	
+	/**
+	 * Return the ID number for a newborn animal. During a parallel update,
+	 * this is only a placeholder (0), as the real ones are handed out in a
+	 * fixed order afterwards. (Only to be called by Animal.reproduce())
+	 */
+	int nextID()
+	{
+		if (inStrips) return 0;
+		else return world.getNextID();
+	}
+	
+	/**
+	 * Are the animals planning their turns in an intent update right now?
+	 */
+	boolean isPlanning()
+	{
+		return planning;
+	}
+	
+	/**
+	 * Count a fight between a carnivore and a herbivore.
+	 * (Only to be called by Carnivore.attack())
+	 */
+	synchronized void countHunt(boolean success)
+	{
+		totalFights++;
+		if (success) fightsWon++;
+	}
+	
+	/**
+	 * Return the fixed parameter settings of the current run.
+	 */
+	public Parameters getParams()
+	{
+		return params;
+	}
+	
 	/**
 	 * Returns the field at the required position.
 	 * @param x, y
 	 * @return MapField
 	 */
 
-	public static MapField getField(int x, int y)
+	public MapField getField(int x, int y)
 	{
-		return map[x][y];
+		return new MapField(map, x, y);
+	}
+	
+	/**
+	 * Return the running statistics of the current run.
+	 */
+	public Statistics getStatistics()
+	{
+		return statistics;
+	}
+	
+	/**
+	 * Return the landscape that holds the actual map data.
+	 * (Use this rather than getField() in tight loops.)
+	 */
+	public Landscape getLandscape()
+	{
+		return map;
 	}
 	
 	/**
 	 * Return the animal at (x, y), or null if there is no animal at that field.
 	 */
-	public static Animal getAnimal(int x, int y)
+	public Animal getAnimal(int x, int y)
 	{
-		Animal a = getHerbivore(x, y);
-		if (a == null) a = getCarnivore(x, y);
-		return a;
+		return animalMap[map.index(x, y)];
 	}
 	
 	/**
 	 * Return the herbivore at (x, y), or null if there is no animal at that field.
 	 */
-	public static Herbivore getHerbivore(int x, int y)
+	public Herbivore getHerbivore(int x, int y)
 	{
-		for (int h = 0; h < herbivorePopulation.size(); h++) {
-			if (herbivorePopulation.get(h).getX() == x && herbivorePopulation.get(h).getY() == y) {
-				return herbivorePopulation.get(h);
-			}
-		}
-		return null;
+		Animal a = animalMap[map.index(x, y)];
+		if (a != null && a.getType() == OccupantType.HERBIVORE) return (Herbivore) a;
+		else return null;
 	}
 	
 	/**
 	 * Return the carnivore at (x, y), or null if there is no animal at that field.
 	 */
-	public static Carnivore getCarnivore(int x, int y)
+	public Carnivore getCarnivore(int x, int y)
 	{
-		for (int c = 0; c < carnivorePopulation.size(); c++) {
-			if (carnivorePopulation.get(c).getX() == x && carnivorePopulation.get(c).getY() == y) {
-				return carnivorePopulation.get(c);
-			}
-		}
-		return null;
+		Animal a = animalMap[map.index(x, y)];
+		if (a != null && a.getType() == OccupantType.CARNIVORE) return (Carnivore) a;
+		else return null;
+	}
+	
+	/**
+	 * Keep the animal map up to date when an animal moves from one field to another.
+	 * (Only to be called by Animal.move())
+	 */
+	void moveAnimal(int fromX, int fromY, int toX, int toY)
+	{
+		animalMap[map.index(toX, toY)] = animalMap[map.index(fromX, fromY)];
+		animalMap[map.index(fromX, fromY)] = null;
 	}
 	
 	/**
 	 * Add an animal to the population
 	 * @param animal
 	 */
-	public static void addAnimal(Animal a)
+	public void addAnimal(Animal a)
 	{
-		EcologiaIO.debug("Simulator: adding a "+a.getType().toString());
-		if (a.getType() == OccupantType.HERBIVORE) {
-			herbivorePopulation.add((Herbivore) a);
-		}
-		else if (a.getType() == OccupantType.CARNIVORE) {
-			carnivorePopulation.add((Carnivore) a);
-		}
-		else {
+		EcologiaIO.debug(() -> "Simulator: adding a "+a.getType().toString());
+		if (a.getType() != OccupantType.HERBIVORE && a.getType() != OccupantType.CARNIVORE) {
 			EcologiaIO.error("Simulator: Invalid OccupantType passed to addAnimal()!",
 							 EcologiaIO.FATAL_ERROR);
+			return;
 		}
+		animalMap[map.index(a.getX(), a.getY())] = a;
+		//During a parallel update, newborns are only registered afterwards
+		if (inStrips) bornInRow.get(a.getY()).add(a);
+		else register(a);
 	}
 	
 	/**
-	 * Remove an animal from the population
+	 * Add a new animal to its population list, the statistics and the logs.
+	 */
+	private void register(Animal a)
+	{
+		if (a.getType() == OccupantType.HERBIVORE) herbivorePopulation.add((Herbivore) a);
+		else carnivorePopulation.add((Carnivore) a);
+		statistics.animalAdded(a.getType());
+		EventLog.birth(world.getTurn(), a.getType(), (int) a.getID(), a.getParent(),
+					   a.getGeneration(), a.getGenome());
+		EcologiaIO.analysis(() -> "Created "+a.getType().toString()+" with ID="+a.getID()+
+							" parent="+a.getParent()+" generation="+a.getGeneration()+
+							" update="+world.getTurn());
+		EcologiaIO.analysis(() -> {
+			String genStr = a.getGenome().asHashMap().toString();
+			return "Genome of animal "+a.getID()+": "+genStr.substring(1, genStr.length()-1);
+		});
+	}
+	
+	/**
+	 * Remove an animal from the population. It is taken off the map
+	 * immediately, but only deleted from the population list at the end
+	 * of the turn (see compactPopulations()).
 	 * @param x, y coordinates
 	 * @param type Make sure we are removing the right animal
+	 * @param cause Why the animal died (for the event log, may be null)
 	 */
-	public static void removeAnimal(int x, int y, OccupantType type)
+	public void removeAnimal(int x, int y, OccupantType type, NewsEvent cause)
 	{
 		Animal a = null;
 		if (type == OccupantType.CARNIVORE) a = getCarnivore(x, y);
@@ -265,20 +742,32 @@ public class Simulator
 		if (a == null) {
 			EcologiaIO.error("Simulator.removeAnimal(): no "+type.toString()+" at "+x+"/"+y+".");
 		}
-		else if (type == OccupantType.HERBIVORE) {
-			herbivorePopulation.remove((Herbivore) a);
-			map[x][y].setOccupant(OccupantType.NONE);
-			EcologiaIO.debug("Simulator: removing a herbivore.");
-		}
-		else if (type == OccupantType.CARNIVORE) {
-			carnivorePopulation.remove((Carnivore) a);
-			map[x][y].setOccupant(OccupantType.NONE);
-			EcologiaIO.debug("Simulator: removing a carnivore.");
+		else if (type == OccupantType.HERBIVORE || type == OccupantType.CARNIVORE) {
+			a.isAlive = false;
+			map.setOccupant(x, y, OccupantType.NONE);
+			animalMap[map.index(x, y)] = null;
+			//During a parallel update, deaths are only recorded afterwards
+			if (inStrips) {
+				diedInRow.get(y).add(a);
+				causesInRow.get(y).add(cause);
+			}
+			else recordDeath(a, cause);
+			EcologiaIO.debug(() -> "Simulator: removing a "+type.toString().toLowerCase()+".");
 		}
 		else {
 			EcologiaIO.error("Simulator: Invalid OccupantType passed to removeAnimal()!",
 							 EcologiaIO.FATAL_ERROR);
 		}
-		if (a != null) EcologiaIO.analysis("Animal "+a.getID()+" died at age "+a.getAge());
+	}
+	
+	/**
+	 * Take a dead animal off the statistics and write its death to the logs.
+	 */
+	private void recordDeath(Animal a, NewsEvent cause)
+	{
+		deathsThisTurn = true;
+		statistics.animalRemoved(a.getType());
+		EventLog.death(world.getTurn(), a.getType(), (int) a.getID(), a.getAge(), cause);
+		EcologiaIO.analysis(() -> "Animal "+a.getID()+" died at age "+a.getAge());
 	}
 }
@@ -0,0 +1,191 @@
+package model;
+
+import java.util.Arrays;
+
+import controller.OccupantType;
+
+/**
+ * Statistics keeps running totals about the state of the simulation. Instead
+ * of recounting the whole map or the populations, it is updated with every
+ * change as it happens (by Landscape and Simulator), so that all queries
+ * are cheap enough to be polled every update.
+ */
+public class Statistics
+{
+	private final int tiles; //The number of tiles on the map
+	private final int[] grassHistogram; //How many tiles have which grass density (0-100)?
+	private long totalGrassDensity;
+
+	//Population variables, indexed by OccupantType.toInt()
+	private final int[] population;
+	private final int[] peakPopulation;
+	private final long[] births;
+	private final long[] deaths;
+
+	/**
+	 * The constructor. (The grass histogram is filled in by the Landscape.)
+	 * @param tiles The number of tiles on the map
+	 */
+	public Statistics(int tiles)
+	{
+		this.tiles = tiles;
+		grassHistogram = new int[101];
+		totalGrassDensity = 0;
+		population = new int[4];
+		peakPopulation = new int[4];
+		births = new long[4];
+		deaths = new long[4];
+	}
+
+	/*
+	 * Update methods (only used by the model)
+	 */
+
+	/**
+	 * The grass density of a tile has changed.
+	 */
+	void grassChanged(int oldDensity, int newDensity)
+	{
+		grassHistogram[oldDensity]--;
+		grassHistogram[newDensity]++;
+		totalGrassDensity += newDensity - oldDensity;
+	}
+
+	/**
+	 * Apply the grass changes collected during a parallel update: entry n
+	 * is the change in the number of tiles with a grass density of n.
+	 */
+	void addGrassChanges(int[] changes)
+	{
+		for (int density = 0; density <= 100; density++) {
+			grassHistogram[density] += changes[density];
+			totalGrassDensity += (long) density*changes[density];
+		}
+	}
+
+	/**
+	 * Replace the grass histogram after a pass over the whole map.
+	 */
+	void setGrassHistogram(int[] histogram)
+	{
+		totalGrassDensity = 0;
+		for (int density = 0; density <= 100; density++) {
+			grassHistogram[density] = histogram[density];
+			totalGrassDensity += (long) density*histogram[density];
+		}
+	}
+
+	/**
+	 * An animal has been added to the population.
+	 */
+	void animalAdded(OccupantType type)
+	{
+		int t = type.toInt();
+		population[t]++;
+		births[t]++;
+		if (population[t] > peakPopulation[t]) peakPopulation[t] = population[t];
+	}
+
+	/**
+	 * An animal has been removed from the population.
+	 */
+	void animalRemoved(OccupantType type)
+	{
+		int t = type.toInt();
+		population[t]--;
+		deaths[t]++;
+	}
+
+	/*
+	 * Queries
+	 */
+
+	/**
+	 * Return the average grass density over all tiles (rounded down).
+	 */
+	public int getAverageGrassDensity()
+	{
+		return (int) ((double) totalGrassDensity/tiles);
+	}
+
+	public long getTotalGrassDensity()
+	{
+		return totalGrassDensity;
+	}
+
+	/**
+	 * Return the lowest grass density of any tile.
+	 */
+	public int getMinGrassDensity()
+	{
+		for (int density = 0; density < 100; density++) {
+			if (grassHistogram[density] > 0) return density;
+		}
+		return 100;
+	}
+
+	/**
+	 * Return the highest grass density of any tile.
+	 */
+	public int getMaxGrassDensity()
+	{
+		for (int density = 100; density > 0; density--) {
+			if (grassHistogram[density] > 0) return density;
+		}
+		return 0;
+	}
+
+	/**
+	 * Return a copy of the grass histogram: entry n is the number of tiles
+	 * with a grass density of n.
+	 */
+	public int[] getGrassHistogram()
+	{
+		return Arrays.copyOf(grassHistogram, grassHistogram.length);
+	}
+
+	/**
+	 * How many tiles have a grass density between min and max (inclusive)?
+	 */
+	public int countTiles(int minDensity, int maxDensity)
+	{
+		int count = 0;
+		for (int density = Math.max(minDensity, 0); density <= Math.min(maxDensity, 100); density++) {
+			count += grassHistogram[density];
+		}
+		return count;
+	}
+
+	/**
+	 * Return the number of living animals of this type.
+	 */
+	public int getPopulation(OccupantType type)
+	{
+		return population[type.toInt()];
+	}
+
+	/**
+	 * Return the highest number of animals of this type alive at any one time.
+	 */
+	public int getPeakPopulation(OccupantType type)
+	{
+		return peakPopulation[type.toInt()];
+	}
+
+	/**
+	 * Return the number of animals of this type that have been added to
+	 * the simulation so far (including the initial population).
+	 */
+	public long getBirths(OccupantType type)
+	{
+		return births[type.toInt()];
+	}
+
+	/**
+	 * Return the number of animals of this type that have died so far.
+	 */
+	public long getDeaths(OccupantType type)
+	{
+		return deaths[type.toInt()];
+	}
+}
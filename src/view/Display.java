@@ -3,28 +3,60 @@ package view;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics;
+import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 
 import javax.swing.JPanel;
+import javax.swing.JViewport;
 import javax.swing.Scrollable;
+import javax.swing.SwingConstants;
 
 import main.EcologiaIO;
 import controller.OccupantType;
+import controller.Snapshot;
 import controller.World;
 
 /**
  * This class provides a graphical representation of the simulation.
- * 
+ *
+ * The map is drawn into an image with one pixel per tile, which is then
+ * scaled up onto the panel. When zoomed out far enough, each pixel of the
+ * image stands for a square block of tiles instead, showing their average
+ * grass density and the density of animals on them.
+ *
  * @author Daniel Vedder
  * @version 29.8.2014
  */
 public class Display extends JPanel implements Scrollable, MouseListener
 {
+	//Zoom levels: positive values are pixels per tile, negative values
+	//are tiles per pixel (in each direction)
+	private static final int[] ZOOM_LEVELS = {40, 20, 10, 5, 2, 1, -2, -4, -8};
+	public static final int DEFAULT_ZOOM = 1; //The index of the default zoom level
+	//Grid lines and glyphs are only drawn if tiles are at least this many pixels wide
+	private static final int GLYPH_ZOOM = 8;
+	//Tile colours
+	private static final int GREEN = Color.green.getRGB();
+	private static final int YELLOW = Color.yellow.getRGB();
+	private static final int WHITE = Color.white.getRGB();
+	private static final int RED = Color.red.getRGB();
+	private static final int GRAY = Color.gray.getRGB();
+	private static final int BLUE = Color.blue.getRGB();
+
 	private int[] size;
+	private int tileSize; //The width and height of a pixel of the image on the panel
+	private int blockSize; //The width and height of the block of tiles shown by one pixel
+	private int imageWidth, imageHeight;
+	private BufferedImage image; //The map, drawn with one pixel per tile (or block)
+	private int[] pixels; //The raster of the image
+	private int renderedTurn; //The update shown in the image
+	private boolean renderAll; //Does the whole image have to be redrawn?
 	private InfoBox infobox;
-	
+
 	/**
 	 * The constructor
 	 * @param int[2] size
@@ -33,58 +65,264 @@ public class Display extends JPanel implements Scrollable, MouseListener
 	{
 		EcologiaIO.debug("Display: initialising.");
 		size = setSize;
-		this.setSize(size[0]*20, size[1]*20);
-		this.setPreferredSize(new Dimension(size[0]*20, size[1]*20));
 		this.setBackground(Color.GRAY);
 		infobox = new InfoBox();
+		renderedTurn = -1;
+		setZoom(DEFAULT_ZOOM);
 		this.addMouseListener(this);
 	}
-	
+
 	/**
-	 * Update the display
+	 * Return a description of each zoom level, for the zoom chooser.
 	 */
-	public void update()
+	public static String[] getZoomNames()
+	{
+		String[] names = new String[ZOOM_LEVELS.length];
+		for (int z = 0; z < ZOOM_LEVELS.length; z++) {
+			if (ZOOM_LEVELS[z] > 0) names[z] = ZOOM_LEVELS[z]+" px per tile";
+			else names[z] = "1 px per "+(-ZOOM_LEVELS[z])+"x"+(-ZOOM_LEVELS[z])+" tiles";
+		}
+		return names;
+	}
+
+	/**
+	 * Change the zoom level, keeping the same tile in the centre of the view.
+	 * @param level The index of the zoom level (see getZoomNames())
+	 */
+	public void setZoom(int level)
 	{
+		if (level < 0 || level >= ZOOM_LEVELS.length) return;
+		//Which tile is currently at the centre of the view?
+		Rectangle view = getVisibleRect();
+		double centreX = 0, centreY = 0;
+		if (image != null) {
+			centreX = (view.x + view.width/2.0)*blockSize/tileSize;
+			centreY = (view.y + view.height/2.0)*blockSize/tileSize;
+		}
+		synchronized (this) {
+			tileSize = Math.max(1, ZOOM_LEVELS[level]);
+			blockSize = Math.max(1, -ZOOM_LEVELS[level]);
+			imageWidth = (size[0]+blockSize-1)/blockSize;
+			imageHeight = (size[1]+blockSize-1)/blockSize;
+			image = new BufferedImage(imageWidth, imageHeight, BufferedImage.TYPE_INT_RGB);
+			pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+			renderAll = true;
+		}
+		EcologiaIO.debug("Display: zoom set to "+getZoomNames()[level]);
+		Dimension panelSize = new Dimension(imageWidth*tileSize, imageHeight*tileSize);
+		this.setSize(panelSize);
+		this.setPreferredSize(panelSize);
+		renderTiles();
+		revalidate();
+		//Scroll back to the same tile
+		if (getParent() instanceof JViewport) {
+			JViewport viewport = (JViewport) getParent();
+			int x = (int) (centreX*tileSize/blockSize) - view.width/2;
+			int y = (int) (centreY*tileSize/blockSize) - view.height/2;
+			x = Math.max(0, Math.min(x, panelSize.width - view.width));
+			y = Math.max(0, Math.min(y, panelSize.height - view.height));
+			viewport.setViewPosition(new Point(x, y));
+		}
 		repaint();
+	}
+
+	/**
+	 * Update the display. Only the tiles that have changed are redrawn,
+	 * and only if they are visible.
+	 */
+	public void update()
+	{
+		Rectangle changed = renderTiles();
+		if (changed != null) {
+			changed = changed.intersection(getVisibleRect());
+			if (!changed.isEmpty()) repaint(changed);
+		}
 		infobox.refresh();
 	}
-	
+
 	/**
-	 * Draw the current status of the simulation onto the panel.
+	 * Bring the image up to date with the latest snapshot. If the image shows
+	 * the previously published snapshot, only the tiles listed as changed in
+	 * the snapshot are redrawn, otherwise all of them are. (When zoomed out, the average grass
+	 * density of a block can change without any single tile changing its colour,
+	 * so then the whole image is redrawn - it is small at these zoom levels.)
+	 * @return The area of the panel that has changed (or null if none)
 	 */
-	public void paintComponent(Graphics g)
+	private Rectangle renderTiles()
 	{
-		for (int x = 0; x < size[0]; x++) {
-			for (int y = 0; y < size[1]; y++) {
-				//the grass density on it affects the colour of the tile
-				if (World.getInstance().getFieldInfo(x, y).get("Grass density") > 20) {
-					g.setColor(Color.green);
+		Snapshot snapshot = World.getInstance().getSnapshot();
+		synchronized (snapshot) {
+			if (snapshot.getXSize() != size[0] || snapshot.getYSize() != size[1]) return null;
+			synchronized (this) {
+				int turn = snapshot.getTurn();
+				if (turn == renderedTurn && !renderAll) return null;
+				int changedCount = snapshot.getChangedCount();
+				if (snapshot.getPreviousTurn() != renderedTurn || changedCount == -1 || renderAll || blockSize > 1) {
+					for (int y = 0; y < imageHeight; y++) {
+						for (int x = 0; x < imageWidth; x++) {
+							renderPixel(snapshot, x, y);
+						}
+					}
+					renderedTurn = turn;
+					renderAll = false;
+					return new Rectangle(0, 0, imageWidth*tileSize, imageHeight*tileSize);
 				}
-				else if ((World.getInstance().getFieldInfo(x, y).get("Grass density") <= 20)
-						 && (World.getInstance().getFieldInfo(x, y).get("Grass density") > 0)) {
-					g.setColor(Color.yellow);
+				renderedTurn = turn;
+				if (changedCount == 0) return null;
+				int[] changed = snapshot.getChangedTiles();
+				int minX = imageWidth, maxX = 0;
+				for (int c = 0; c < changedCount; c++) {
+					int x = changed[c] % size[0];
+					renderPixel(snapshot, x, changed[c] / size[0]);
+					if (x < minX) minX = x;
+					if (x > maxX) maxX = x;
 				}
-				else {
-					g.setColor(Color.white);
+				//The changed tiles are listed row by row
+				int minY = changed[0] / size[0];
+				int maxY = changed[changedCount-1] / size[0];
+				return new Rectangle(minX*tileSize, minY*tileSize,
+									 (maxX-minX+1)*tileSize, (maxY-minY+1)*tileSize);
+			}
+		}
+	}
+
+	/**
+	 * Draw a single pixel of the image.
+	 */
+	private void renderPixel(Snapshot snapshot, int x, int y)
+	{
+		if (blockSize == 1) {
+			int i = y*size[0] + x;
+			pixels[y*imageWidth + x] = tileColour(snapshot.getGrassLayer()[i],
+					snapshot.getOccupantLayer()[i], tileSize >= GLYPH_ZOOM);
+		}
+		else pixels[y*imageWidth + x] = blockColour(snapshot, x*blockSize, y*blockSize);
+	}
+
+	/**
+	 * Work out the colour of a tile. If glyphs are drawn on top, this is just
+	 * the colour of the grass, otherwise the occupant determines the colour.
+	 */
+	private static int tileColour(int grassDensity, int occupant, boolean glyphs)
+	{
+		if (!glyphs) {
+			if (occupant == OccupantType.CARNIVORE.toInt()) return RED;
+			else if (occupant == OccupantType.HERBIVORE.toInt()) return GRAY;
+			else if (occupant == OccupantType.WATER.toInt()) return BLUE;
+		}
+		return grassColour(grassDensity);
+	}
+
+	/**
+	 * The grass density on a tile affects its colour.
+	 */
+	private static int grassColour(int grassDensity)
+	{
+		if (grassDensity > 20) return GREEN;
+		else if (grassDensity > 0) return YELLOW;
+		else return WHITE;
+	}
+
+	/**
+	 * Work out the colour of a block of tiles, starting at (x0, y0). Blocks
+	 * that are mostly water are blue. Otherwise, the colour of the average
+	 * grass density is blended towards red (carnivores) or gray (herbivores)
+	 * according to the density of animals in the block.
+	 */
+	private int blockColour(Snapshot snapshot, int x0, int y0)
+	{
+		byte[] grass = snapshot.getGrassLayer();
+		byte[] occupant = snapshot.getOccupantLayer();
+		int x1 = Math.min(x0+blockSize, size[0]);
+		int y1 = Math.min(y0+blockSize, size[1]);
+		int tiles = 0, grassTotal = 0, herbivores = 0, carnivores = 0, water = 0;
+		for (int y = y0; y < y1; y++) {
+			for (int x = x0; x < x1; x++) {
+				int i = y*size[0] + x;
+				tiles++;
+				grassTotal += grass[i];
+				if (occupant[i] == OccupantType.HERBIVORE.toInt()) herbivores++;
+				else if (occupant[i] == OccupantType.CARNIVORE.toInt()) carnivores++;
+				else if (occupant[i] == OccupantType.WATER.toInt()) water++;
+			}
+		}
+		if (water*2 >= tiles) return BLUE;
+		int colour = grassColour(grassTotal/tiles);
+		int animals = herbivores + carnivores;
+		if (animals == 0) return colour;
+		//A block that is at least half full is shown in the full animal colour
+		double weight = Math.min(1.0, 2.0*animals/tiles);
+		colour = blend(colour, GRAY, weight*herbivores/animals);
+		return blend(colour, RED, weight*carnivores/animals);
+	}
+
+	/**
+	 * Mix two RGB colours (weight is the share of the second colour).
+	 */
+	private static int blend(int rgb1, int rgb2, double weight)
+	{
+		int r = (int) (((rgb1 >> 16) & 0xFF)*(1-weight) + ((rgb2 >> 16) & 0xFF)*weight);
+		int g = (int) (((rgb1 >> 8) & 0xFF)*(1-weight) + ((rgb2 >> 8) & 0xFF)*weight);
+		int b = (int) ((rgb1 & 0xFF)*(1-weight) + (rgb2 & 0xFF)*weight);
+		return (r << 16) | (g << 8) | b;
+	}
+
+	/**
+	 * Draw the current status of the simulation onto the panel. The image
+	 * is scaled up in one go; only the part within the clip bounds is drawn.
+	 */
+	public void paintComponent(Graphics g)
+	{
+		super.paintComponent(g);
+		Snapshot snapshot = World.getInstance().getSnapshot();
+		synchronized (snapshot) {
+			synchronized (this) {
+				Rectangle clip = g.getClipBounds();
+				if (clip == null) clip = new Rectangle(0, 0, getWidth(), getHeight());
+				int x0 = Math.max(0, clip.x/tileSize);
+				int y0 = Math.max(0, clip.y/tileSize);
+				int x1 = Math.min(imageWidth, (clip.x+clip.width+tileSize-1)/tileSize);
+				int y1 = Math.min(imageHeight, (clip.y+clip.height+tileSize-1)/tileSize);
+				if (x0 >= x1 || y0 >= y1) return;
+				g.drawImage(image, x0*tileSize, y0*tileSize, x1*tileSize, y1*tileSize,
+							x0, y0, x1, y1, null);
+				if (blockSize == 1 && tileSize >= GLYPH_ZOOM
+					&& snapshot.getXSize() == size[0] && snapshot.getYSize() == size[1]) {
+					drawGlyphs(g, snapshot, x0, y0, x1, y1);
 				}
-				g.fillRect(x*20, y*20, 20, 20);//colour the tiles
+			}
+		}
+	}
+
+	/**
+	 * Draw the grid lines and the occupants of the given tiles (x1 and y1
+	 * are exclusive).
+	 */
+	private void drawGlyphs(Graphics g, Snapshot snapshot, int x0, int y0, int x1, int y1)
+	{
+		final int carnivore = OccupantType.CARNIVORE.toInt();
+		final int herbivore = OccupantType.HERBIVORE.toInt();
+		final int water = OccupantType.WATER.toInt();
+		int inset = tileSize/5; //The space around an animal
+		int waterInset = tileSize/10; //The space around a water tile
+		for (int x = x0; x < x1; x++) {
+			for (int y = y0; y < y1; y++) {
 				g.setColor(Color.black);
-				g.drawRect(x*20, y*20, 20, 20);//draw the tiles as squares
+				g.drawRect(x*tileSize, y*tileSize, tileSize, tileSize);//draw the tiles as squares
 				//draw in any animal occupants of the tile, or a water tile
-				if (OccupantType.fromInt(World.getInstance().getFieldInfo(x, y).get("Occupant"))
-					== OccupantType.CARNIVORE) {
+				int occupant = snapshot.getOccupant(x, y);
+				if (occupant == carnivore) {
 					g.setColor(Color.red);
-					g.fillOval(x*20+4, y*20+4, 12, 12);
+					g.fillOval(x*tileSize+inset, y*tileSize+inset, tileSize-2*inset, tileSize-2*inset);
 				}
-				else if (OccupantType.fromInt(World.getInstance().getFieldInfo(x, y).get("Occupant"))
-						 == OccupantType.HERBIVORE) {
+				else if (occupant == herbivore) {
 					g.setColor(Color.gray);
-					g.fillOval(x*20+4, y*20+4, 12, 12);
+					g.fillOval(x*tileSize+inset, y*tileSize+inset, tileSize-2*inset, tileSize-2*inset);
 				}
-				else if (OccupantType.fromInt(World.getInstance().getFieldInfo(x, y).get("Occupant"))
-						 == OccupantType.WATER) {
+				else if (occupant == water) {
 					g.setColor(Color.blue);
-					g.fillRect(x*20+2, y*20+2, 16, 16);
+					g.fillRect(x*tileSize+waterInset, y*tileSize+waterInset,
+							   tileSize-2*waterInset, tileSize-2*waterInset);
 				}
 			}
 		}
@@ -99,68 +337,77 @@ public class Display extends JPanel implements Scrollable, MouseListener
 	}
 
 	//Override methods from the Scrollable and MouseListener interfaces
-	
+
 	@Override
 	public void mouseClicked(MouseEvent click) {
-		int fieldX = click.getX()/20;
-		int fieldY = click.getY()/20;
-		if (fieldX >= 0 && fieldX < World.getInstance().getParam("xsize") && fieldY >= 0
-			&& fieldY < World.getInstance().getParam("ysize")) {
-			infobox.show(click.getX()/20, click.getY()/20);
+		//When zoomed out, this selects the top left tile of the block
+		int fieldX = click.getX()/tileSize*blockSize;
+		int fieldY = click.getY()/tileSize*blockSize;
+		if (fieldX >= 0 && fieldX < size[0] && fieldY >= 0 && fieldY < size[1]) {
+			infobox.show(fieldX, fieldY);
 		}
 	}
 
 	@Override
 	public void mouseEntered(MouseEvent arg0) {
 		// Auto-generated method stub
-		
+
 	}
 
 	@Override
 	public void mouseExited(MouseEvent arg0) {
 		// Auto-generated method stub
-		
+
 	}
 
 	@Override
 	public void mousePressed(MouseEvent arg0) {
 		// Auto-generated method stub
-		
+
 	}
 
 	@Override
 	public void mouseReleased(MouseEvent arg0) {
 		// Auto-generated method stub
-		
+
 	}
 
 	@Override
 	public Dimension getPreferredScrollableViewportSize() {
-		// Auto-generated method stub
-		return null;
+		return getPreferredSize();
 	}
 
+	/**
+	 * Scroll by a whole view, keeping one row or column of tiles in sight.
+	 */
 	@Override
-	public int getScrollableBlockIncrement(Rectangle arg0, int arg1, int arg2) {
-		// Auto-generated method stub
-		return 0;
+	public int getScrollableBlockIncrement(Rectangle visible, int orientation, int direction) {
+		int length = (orientation == SwingConstants.HORIZONTAL) ? visible.width : visible.height;
+		return Math.max(length - getScrollableUnitIncrement(visible, orientation, direction),
+						getScrollableUnitIncrement(visible, orientation, direction));
 	}
 
 	@Override
 	public boolean getScrollableTracksViewportHeight() {
-		// Auto-generated method stub
 		return false;
 	}
 
 	@Override
 	public boolean getScrollableTracksViewportWidth() {
-		// Auto-generated method stub
 		return false;
 	}
 
+	/**
+	 * Scroll by one tile, so that the view stays aligned with the grid
+	 * (or by a few pixels when zoomed out).
+	 */
 	@Override
-	public int getScrollableUnitIncrement(Rectangle arg0, int arg1, int arg2) {
-		// Auto-generated method stub
-		return 0;
+	public int getScrollableUnitIncrement(Rectangle visible, int orientation, int direction) {
+		int unit = (tileSize >= GLYPH_ZOOM) ? tileSize : 16;
+		int position = (orientation == SwingConstants.HORIZONTAL) ? visible.x : visible.y;
+		int offset = position % unit;
+		if (offset == 0) return unit;
+		else if (direction < 0) return offset;
+		else return unit - offset;
 	}
 }
@@ -5,6 +5,7 @@ import java.awt.event.*;
 import java.util.ArrayList;
 
 import javax.swing.*;
+import javax.swing.text.BadLocationException;
 
 import controller.Humidity;
 import controller.World;
@@ -25,13 +26,18 @@ public class GUI extends JFrame
 	private JMenu file, configuration, help_menu;
 	private JMenuItem new_run, exit, programConfigBox, simConfigBox, genomeConfigBox, configFileDialog, help, about;
 	private JLabel update_counter, herbivore_counter, carnivore_counter, generation_counter, grass_counter;
-	private JComboBox<String> humidityChooser;
-	private JTextArea ticker; //XXX Remove this at some point? - Expensive?
+	private JComboBox<String> humidityChooser, zoomChooser;
+	private static final int TICKER_LINES = 500; //The maximum number of lines kept in the ticker
+	private JTextArea ticker;
+	private long newsRead; //The sequence number of the next news item to display
+	private ArrayList<String> newsItems; //Reused for fetching the news
 	private JTextField stopAtField;
 	private JCheckBox disableDisplay;
 	private JScrollPane scrollticker, scrollscreen;
 	private JButton run, next;
 	private JSlider speedSlider;
+	private Timer frameTimer; //Redraws the GUI at a fixed frame rate
+	private int loggedTurn = -1; //The last update for which a frame was logged
 	private Display display;
 	private ProgramConfig programConfig;
 	private SimulationConfig simulationConfig;
@@ -57,14 +63,44 @@ public class GUI extends JFrame
         configChooser = new JFileChooser(System.getProperty("user.dir"));
 		helpWindow = new HelpWindow();
 		this.setVisible(true);
+		startFrameTimer();
 	}
 	
 	/**
-	 * Update the GUI.
+	 * Redraw the GUI at the configured frame rate, independently of the
+	 * simulation. Each frame shows the latest snapshot published by the
+	 * model; if drawing falls behind, the Timer drops the missed frames.
 	 */
-	public synchronized void update()
+	private void startFrameTimer()
 	{
-		EcologiaIO.debug("GUI: updating display.");
+		int frameRate = World.getInstance().getParam("frameRate");
+		if (frameRate <= 0) {
+			EcologiaIO.error("frameRate <= 0, using 25 frames per second");
+			frameRate = 25;
+		}
+		frameTimer = new Timer(Math.max(1, 1000/frameRate), new ActionListener()
+		{
+			public void actionPerformed(ActionEvent e)
+			{
+				update();
+			}
+		});
+		frameTimer.setCoalesce(true);
+		frameTimer.start();
+	}
+	
+	/**
+	 * Update the GUI. (This is called by the frame timer, and must only be
+	 * called from the Swing event dispatch thread.)
+	 */
+	public void update()
+	{
+		//Only log the first frame of each update, not every frame
+		int turn = World.getInstance().getTurn();
+		if (turn != loggedTurn) {
+			EcologiaIO.debug("GUI: updating display.");
+			loggedTurn = turn;
+		}
 		//Update the display
 		if (!disableDisplay.isSelected()) {
 			display.update();
@@ -240,6 +276,8 @@ public class GUI extends JFrame
 		ticker.setLineWrap(true);
 		ticker.setWrapStyleWord(true);
 		ticker.setText(" --- Runtime Protocol ---");
+		newsRead = 0;
+		newsItems = new ArrayList<String>();
 		scrollticker = new JScrollPane(ticker);
 		scrollticker.setWheelScrollingEnabled(true);
 		information.add(scrollticker);
@@ -317,6 +355,22 @@ public class GUI extends JFrame
 		disableDisplay = new JCheckBox("Freeze display");
 		information.add(disableDisplay);
 		information.add(Box.createVerticalStrut(10));
+		//Add the zoom chooser
+		Box zoom_panel = new Box(BoxLayout.X_AXIS);
+		zoomChooser = new JComboBox<String>(Display.getZoomNames());
+		zoomChooser.setMaximumSize(new Dimension(160, 30));
+		zoomChooser.setSelectedIndex(Display.DEFAULT_ZOOM);
+		zoomChooser.addActionListener(new ActionListener()
+		{
+			public void actionPerformed(ActionEvent e)
+			{
+				display.setZoom(zoomChooser.getSelectedIndex());
+			}
+		});
+		zoom_panel.add(new JLabel("Zoom: "));
+		zoom_panel.add(zoomChooser);
+		information.add(zoom_panel);
+		information.add(Box.createVerticalStrut(10));
 	}
 	
 	/**
@@ -324,8 +378,8 @@ public class GUI extends JFrame
 	 */
 	private void addDisplay()
 	{
-		display = new Display(new int[] {World.getInstance().getParam("xsize"),
-							   World.getInstance().getParam("ysize")});
+		display = new Display(new int[] {World.getInstance().getParameters().xsize,
+							   World.getInstance().getParameters().ysize});
 		scrollscreen = new JScrollPane(display, JScrollPane. VERTICAL_SCROLLBAR_ALWAYS,
 									   JScrollPane.HORIZONTAL_SCROLLBAR_ALWAYS);
 		this.add(scrollscreen, BorderLayout.CENTER);
@@ -337,6 +391,7 @@ public class GUI extends JFrame
 	public void reset()
 	{
 		EcologiaIO.debug("Resetting the GUI.");
+		frameTimer.stop();
 		programConfig.dispose();
 		simulationConfig.dispose();
 		genomeConfig.dispose();
@@ -350,15 +405,28 @@ public class GUI extends JFrame
 	 */
 	public void displayNews()
 	{
+		newsItems.clear();
+		newsRead = World.getInstance().getNews().read(newsRead, newsItems);
+		if (newsItems.isEmpty()) return;
 		EcologiaIO.debug("GUI: updating news.");
-		ArrayList<String> news = World.getInstance().collectNews();
-		if (!news.isEmpty()) {
-			for (int i = 0; i < news.size(); i++) {
-				ticker.append("\n"+news.get(i));
+		//Only the last TICKER_LINES items can be shown anyway
+		int first = Math.max(0, newsItems.size() - TICKER_LINES);
+		StringBuilder text = new StringBuilder();
+		for (int i = first; i < newsItems.size(); i++) {
+			text.append('\n').append(newsItems.get(i));
+		}
+		ticker.append(text.toString());
+		//Drop the oldest lines so that the ticker does not grow without bound
+		int excess = ticker.getLineCount() - TICKER_LINES;
+		if (excess > 0) {
+			try {
+				ticker.replaceRange(null, 0, ticker.getLineEndOffset(excess-1));
+			}
+			catch (BadLocationException ble) {
+				EcologiaIO.error("GUI: failed to trim the news ticker.", ble);
 			}
-			World.getInstance().giveNews(null); //reset the news list
-			ticker.setCaretPosition(ticker.getText().length());
 		}
+		ticker.setCaretPosition(ticker.getDocument().getLength());
 	}
 	
 }
@@ -1,6 +1,8 @@
 package view;
 
 import java.awt.BorderLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.util.HashMap;
 
 import javax.swing.*;
@@ -21,6 +23,8 @@ public class InfoBox extends JFrame
 {
 	private int xtile, ytile; //The coordinates of the currently active tile
 	private HashMap<String, Integer> animalInfo;
+	private int followedID; //The ID of the animal being followed (0 if none)
+	private JCheckBox follow;
 	private JTabbedPane tab_pane;
 	private Box tile_box, animal_box;
 	private JLabel coordinates, occupied_by, humidity, grasslevel; //JLabels needed for the tile panel
@@ -81,6 +85,20 @@ public class InfoBox extends JFrame
 		tab_pane.addTab("Animal", animal_box);
 		id = new JLabel("Animal ID: "); //ID number
 		animal_box.add(id);
+		follow = new JCheckBox("Follow this animal"); //Keep showing this animal as it moves
+		follow.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				if (follow.isSelected() && animalInfo != null) {
+					followedID = animalInfo.get("ID");
+					EcologiaIO.debug("Following animal "+followedID);
+				}
+				else {
+					follow.setSelected(false);
+					followedID = 0;
+				}
+			}
+		});
+		animal_box.add(follow);
 		type = new JLabel("Type: "); //Type
 		animal_box.add(type);
 		animal_box.add(Box.createVerticalStrut(10));
@@ -129,21 +147,37 @@ public class InfoBox extends JFrame
 	{
 		xtile = tileX;
 		ytile = tileY;
+		follow.setSelected(false);
+		followedID = 0;
 		refresh();
 		this.setVisible(true);
 		EcologiaIO.debug("Showing InfoBox for ("+xtile+"/"+ytile+")");
 	}
 	
 	/**
-	 * Refresh the Infobox with the data of a new tile.
+	 * Refresh the Infobox with the data of a new tile. If an animal is being
+	 * followed, show the tile it is on now.
 	 */
 	public void refresh()
 	{
-		animalInfo = World.getInstance().getAnimalInfo(xtile, ytile);
+		if (followedID != 0) {
+			animalInfo = World.getInstance().getAnimalInfoByID(followedID);
+			if (animalInfo != null) {
+				xtile = animalInfo.get("X");
+				ytile = animalInfo.get("Y");
+			}
+			else { //The animal has died
+				follow.setSelected(false);
+				followedID = 0;
+			}
+		}
+		else animalInfo = World.getInstance().getAnimalInfo(xtile, ytile);
+		follow.setEnabled(animalInfo != null);
 		coordinates.setText("Tile: "+xtile+"/"+ytile);
-		occupied_by.setText("Occupant: "+OccupantType.fromInt(World.getInstance().getFieldInfo(xtile, ytile).get("Occupant")).toString());
-		humidity.setText("Humidity: "+Humidity.getStatus(World.getInstance().getFieldInfo(xtile, ytile).get("Local humidity")).getString());
-		grasslevel.setText("Grass density: "+World.getInstance().getFieldInfo(xtile, ytile).get("Grass density"));
+		OccupantType occupant = OccupantType.fromInt(World.getInstance().getOccupant(xtile, ytile));
+		occupied_by.setText("Occupant: "+occupant.toString());
+		humidity.setText("Humidity: "+Humidity.getStatus(World.getInstance().getLocalHumidity(xtile, ytile)).getString());
+		grasslevel.setText("Grass density: "+World.getInstance().getGrassDensity(xtile, ytile));
 		if (animalInfo != null) { //Only display information if an animal actually occupies the tile
 			id.setText("Animal ID: "+animalInfo.get("ID"));
 			type.setText("Type: "+OccupantType.fromInt(animalInfo.get("Type")).toString());
@@ -166,7 +200,7 @@ public class InfoBox extends JFrame
 		}
 		else { //If there is no animal here, display N/A
 			id.setText("Animal ID: N/A");
-			type.setText("Type: "+OccupantType.fromInt(World.getInstance().getFieldInfo(xtile, ytile).get("Occupant")).toString());
+			type.setText("Type: "+occupant.toString());
 			energy.setText("Energy: N/A");
 			age.setText("Age: N/A");
 			generation.setText("Generation: N/A");